@@ -1,21 +1,15 @@
 
 package ca.mlaflamme.clocktime;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
-import android.animation.TimeInterpolator;
 import android.content.Context;
+import android.graphics.Paint;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.Image;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.view.View;
-import android.view.animation.AccelerateInterpolator;
-import android.view.animation.DecelerateInterpolator;
 import android.widget.ImageView;
 import android.widget.TextView;
 import ca.mlaflamme.clocktime.notification.NotifCompact;
@@ -29,12 +23,6 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     static final long MOVE_DELAY = 15000; // DeskClock.SCREEN_SAVER_MOVE_DELAY;
     static final long SLIDE_TIME = 10000;
     static final long FADE_TIME = 3000;
-    static final float MAX_SPACE_RATIO = 0.8f; //Safety measure to resize the content in case
-                                                // the content couldn't move.
-    static final float SHRINKING_RATIO = 0.85f; // Percentage of the original to shrink and
-                                                // expand before and after moving.
-
-    static boolean mSlideEffect = true;
 
     private View mContentView, mSaverView;
     private TextView mDate;
@@ -47,10 +35,8 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     private final Handler mHandler;
     private NotifCompact mNotifCompact;
 
-    private static TimeInterpolator mSlowStartWithBrakes;
-    private static float mSizeRatio;
+    private final ClockMover mMover = new ClockMover(MOVE_DELAY, SLIDE_TIME, FADE_TIME);
     private float mNextAlpha;
-    private float mLastAlpha = 0;
     private SensorManager mSensorManager;
     private Sensor mLight;
     private boolean mInitSensor;
@@ -61,22 +47,68 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     private float mAdjustBrightness;
     private float mMinBrightness;
 
+    private UpdateGraph mGraph;
+
+    /* Each element is only redrawn when its own source changed */
+    private final UpdateGraph.Renderer mRenderer = new UpdateGraph.Renderer() {
+        @Override
+        public void render(int element) {
+            Context context = mDate.getContext();
+            DisplayConfig config = DisplayConfig.get(context);
+            switch (element) {
+                case UpdateGraph.DATE:
+                    Utils.setDateTextView(context, mDate, mDateFormat, mDateFormatForAccessibility);
+                    break;
+                case UpdateGraph.ALARM:
+                    Utils.setAlarmTextView(context, mNextAlarm);
+                    break;
+                case UpdateGraph.BATTERY:
+                    if (config.isBatteryShown()) {
+                        mBattery.setVisibility(View.VISIBLE);
+                        Utils.setBatteryStatus(context, mBattery);
+                    } else {
+                        mBattery.setVisibility(View.GONE);
+                    }
+                    break;
+                case UpdateGraph.IMAGES:
+                    Utils.setBackground(context, mBackground, config.getBackgroundImagePath());
+                    Utils.setWakeupView(context, mWakeupImage, config.getWakeupImagePath());
+                    break;
+            }
+        }
+    };
+
     public ScreensaverMoveSaverRunnable(Handler handler) {
         mHandler = handler;
         mInitSensor = false;
-        mSlowStartWithBrakes = new TimeInterpolator() {
-            @Override
-            public float getInterpolation(float x) {
-                return (float) (Math.cos((Math.pow(x, 3) + 1) * Math.PI) / 2.0f) + 0.5f;
-            }
-        };
         mNextAlpha = (float) ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT /
                 ScreensaverSettingsActivity.BRIGHTNESS_MAX;
 
     }
 
     public void setSlideEffect(boolean useSlideEffect) {
-        mSlideEffect = useSlideEffect;
+        mMover.setSlideEffect(useSlideEffect);
+    }
+
+    /**
+     * @see ClockMover#setPixelShift
+     */
+    public void setPixelShift(boolean usePixelShift) {
+        mMover.setPixelShift(usePixelShift);
+    }
+
+    /**
+     * Replaces the default policy deciding when the clock moves.
+     */
+    public void setMovePolicy(MoveScheduler.Policy policy) {
+        mMover.setMovePolicy(policy);
+    }
+
+    /**
+     * @param paint the paint of the layer of the saver view, applied to its snapshots too
+     */
+    public void setLayerPaint(Paint paint) {
+        mMover.setLayerPaint(paint);
     }
 
     public void setAutoBrightness(boolean useAutoBrightness, float adjFactor, float minBrightness) {
@@ -89,6 +121,11 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     public void setNotificationReceiver(Context context) {}
 
     public void registerViews(View contentView, View saverView) {
+        // A new layout, like after a rotation, would keep a running slide and its snapshot on
+        // the old views
+        if (mSaverView != null && mSaverView != saverView) {
+            mMover.release();
+        }
         mContentView = contentView;
         mDate = (TextView) contentView.findViewById(R.id.date);
         mBackground = (ImageView) contentView.findViewById(R.id.background);
@@ -103,11 +140,27 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
         mDateFormat = mContentView.getContext().getString(R.string.abbrev_wday_month_day_no_year);
         mDateFormatForAccessibility = mContentView.getContext().getString(R.string.full_wday_month_day_no_year);
 
-        handleUpdate();
+        // The analog clock may show seconds, a snapshot would freeze them during the slide
+        mMover.setSnapshotSlide(!Utils.CLOCK_TYPE_ANALOG.equals(
+                DisplayConfig.get(contentView.getContext()).getClockStyle()));
+
+        if (mGraph == null) {
+            mMover.start(contentView.getContext());
+            mGraph = new UpdateGraph(contentView.getContext(), UpdateGraph.DATE | UpdateGraph.ALARM
+                    | UpdateGraph.BATTERY | UpdateGraph.IMAGES, mRenderer);
+        }
+        mGraph.start();
+        compatNotifCheck(DisplayConfig.get(contentView.getContext()));
     }
 
     public void unregister() {
         mSensorManager.unregisterListener(this);
+
+        if (mGraph != null)
+            mGraph.stop();
+
+        if (mContentView != null && mSaverView != null)
+            mMover.stop(mContentView, mSaverView);
     }
 
     @Override
@@ -121,8 +174,6 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
             handleLightSensorChanges(event.values);
     }
 
-    // TODO: slow down the frequency after 1h
-    // TODO: accellerate frequency 1h before wakeup alarm
     private void handleLightSensorChanges(float[] values) {
         float luxLight = values[0];
         // Do something with this sensor data.
@@ -178,152 +229,33 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
             mInitSensor = true;
         }
 
-        final float xrange = mContentView.getWidth() - mSaverView.getWidth();
-        final float yrange = mContentView.getHeight() - mSaverView.getHeight();
-        Log.v("xrange: " + xrange + " yrange: " + yrange + " mNextAlpha: " + mNextAlpha);
-
-        if (xrange == 0 && yrange == 0) {
+        delay = mMover.move(mContentView, mSaverView, mNextAlpha, mUseAutoBrightness);
+        if (delay == 0) {
             delay = 500; // back in a split second
         } else {
-            final int nextx = (int) (Math.random() * xrange);
-            final int nexty = (int) (Math.random() * yrange);
-
-            AnimatorSet s = new AnimatorSet();
-
-            if (mSaverView.getAlpha() == 0f) {
-                // jump right there
-                mSaverView.setX(nextx);
-                mSaverView.setY(nexty);
-
-                schickIfTooBig(s);
-                Animator appear = ObjectAnimator.ofFloat(mSaverView, "alpha", 0f, mNextAlpha).setDuration(FADE_TIME);
-                s.play(appear);
-            } else {
-
-                Animator xMove = ObjectAnimator.ofFloat(mSaverView, "x", mSaverView.getX(), nextx);
-                Animator yMove = ObjectAnimator.ofFloat(mSaverView, "y", mSaverView.getY(), nexty);
-
-                Animator xShrink = ObjectAnimator.ofFloat(mSaverView, "scaleX", mSizeRatio, mSizeRatio * SHRINKING_RATIO);
-                Animator xGrow = ObjectAnimator.ofFloat(mSaverView, "scaleX", mSizeRatio * SHRINKING_RATIO, mSizeRatio);
-
-                Animator yShrink = ObjectAnimator.ofFloat(mSaverView, "scaleY", mSizeRatio, mSizeRatio * SHRINKING_RATIO);
-                Animator yGrow = ObjectAnimator.ofFloat(mSaverView, "scaleY", mSizeRatio * SHRINKING_RATIO, mSizeRatio);
-
-                AnimatorSet shrink = new AnimatorSet();
-                shrink.play(xShrink).with(yShrink);
-                AnimatorSet grow = new AnimatorSet();
-                grow.play(xGrow).with(yGrow);
-
-                Animator fadeout = ObjectAnimator.ofFloat(mSaverView, "alpha", mLastAlpha, 0f);
-                Animator fadein = ObjectAnimator.ofFloat(mSaverView, "alpha", 0f, mNextAlpha);
-                Animator adjbrigh = ObjectAnimator.ofFloat(mSaverView, "alpha", mLastAlpha, mNextAlpha);
-
-
-                if (mSlideEffect) {
-                    s.play(xMove).with(yMove).with(adjbrigh);
-                    s.setDuration(SLIDE_TIME);
-
-                    s.play(shrink.setDuration(SLIDE_TIME / 2));
-                    s.play(grow.setDuration(SLIDE_TIME / 2)).after(shrink);
-                    s.setInterpolator(mSlowStartWithBrakes);
-                } else {
-                    AccelerateInterpolator accel = new AccelerateInterpolator();
-                    DecelerateInterpolator decel = new DecelerateInterpolator();
-
-                    shrink.setDuration(FADE_TIME).setInterpolator(accel);
-                    fadeout.setDuration(FADE_TIME).setInterpolator(accel);
-                    grow.setDuration(FADE_TIME).setInterpolator(decel);
-                    fadein.setDuration(FADE_TIME).setInterpolator(decel);
-                    s.play(shrink);
-                    s.play(fadeout);
-                    s.play(xMove.setDuration(0)).after(FADE_TIME);
-                    s.play(yMove.setDuration(0)).after(FADE_TIME);
-                    s.play(fadein).after(FADE_TIME);
-                    s.play(grow).after(FADE_TIME);
-                }
-            }
-            s.start();
-
             mHandler.postDelayed(new Runnable() {
                 @Override
                 public void run() {
                     handleUpdate();
                 }
             }, FADE_TIME);
-
-            mLastAlpha = mNextAlpha;
-
-            long now = System.currentTimeMillis();
-            long adjust = (now % MOVE_DELAY);
-            delay = delay + (MOVE_DELAY - adjust) // minute aligned
-                    - (mSlideEffect ? 0 : FADE_TIME) // start moving before the fade
-            ;
         }
 
         mHandler.removeCallbacks(this);
         mHandler.postDelayed(this, delay);
     }
 
-    private void initialSizing() {
-        float xSpaceRatio;      // requested ratio between mSaverView and mContentView weight
-        float ySpaceRatio;      // requested ratio between mSaverView and mContentView height
-        float maxBetweenXAndY;
-
-        xSpaceRatio = (float) mSaverView.getWidth() * mSizeRatio / mContentView.getWidth();
-        ySpaceRatio = (float) mSaverView.getHeight() * mSizeRatio / mContentView.getHeight();
-        maxBetweenXAndY = xSpaceRatio > ySpaceRatio ? xSpaceRatio : ySpaceRatio;
-
-        if (maxBetweenXAndY > MAX_SPACE_RATIO) {
-            if (xSpaceRatio > ySpaceRatio)
-                mSizeRatio = MAX_SPACE_RATIO * mContentView.getWidth() / mSaverView.getWidth();
-            else
-                mSizeRatio = MAX_SPACE_RATIO * mContentView.getHeight() / mSaverView.getHeight();
-        }
-
-        Animator xShrink = ObjectAnimator.ofFloat(mSaverView, "scaleX", 1f, mSizeRatio);
-        Animator yShrink = ObjectAnimator.ofFloat(mSaverView, "scaleY", 1f, mSizeRatio);
-        AnimatorSet resize = new AnimatorSet();
-        resize.play(xShrink).with(yShrink);
-    }
-
-    private void schickIfTooBig(AnimatorSet s) {
-        final float xRatio = (float) mSaverView.getWidth() / mContentView.getWidth();
-        final float yRatio = (float) mSaverView.getHeight() / mContentView.getHeight();
-        final float biggerRatio = xRatio > yRatio ? xRatio : yRatio;
-
-        if (biggerRatio > MAX_SPACE_RATIO) {
-            mSizeRatio = MAX_SPACE_RATIO / biggerRatio;
-
-            Animator xShrink = ObjectAnimator.ofFloat(mSaverView, "scaleX", 1, mSizeRatio);
-            Animator yShrink = ObjectAnimator.ofFloat(mSaverView, "scaleY", 1, mSizeRatio);
-
-            s.play(xShrink).with(yShrink);
-        }
-        else
-            mSizeRatio = 1;
-
-
-    }
-
+    /**
+     * Redraws the elements whose source changed since they were last drawn, and polls the
+     * notifications which have no change broadcast before the listener service.
+     */
     public void handleUpdate() {
+        if (mGraph == null)
+            return;
         try {
-            Utils.setAlarmTextView(mDate.getContext(), mNextAlarm);
-            Utils.setDateTextView(mDate.getContext(), mDate, mDateFormat, mDateFormatForAccessibility);
-            Utils.setBackground(mDate.getContext(), mBackground,
-                    PreferenceManager.getDefaultSharedPreferences(mDate.getContext()).getString(
-                            ScreensaverSettingsActivity.KEY_PATH_BACKGROUND_IMAGE, ""));
-            Utils.setWakeupView(mDate.getContext(), mWakeupImage,
-                    PreferenceManager.getDefaultSharedPreferences(mDate.getContext()).getString(
-                            ScreensaverSettingsActivity.KEY_PATH_WAKEUP_IMAGE, ""));
-
-            if (isPrefEnabled(ScreensaverSettingsActivity.KEY_BATTERY, true)) {
-                mBattery.setVisibility(View.VISIBLE);
-                Utils.setBatteryStatus(mDate.getContext(), mBattery);
-            } else {
-                mBattery.setVisibility(View.GONE);
-            }
+            mGraph.requestUpdate();
 
-            compatNotifCheck();
+            compatNotifCheck(DisplayConfig.get(mDate.getContext()));
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -332,7 +264,7 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     }
 
 
-    private void compatNotifCheck() {
+    private void compatNotifCheck(final DisplayConfig config) {
         if (mNotifCompact == null) {
             mNotifCompact = new NotifCompact();
         }
@@ -343,13 +275,13 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
             @Override
             public void run() {
                 try {
-                    if (isPrefEnabled(ScreensaverSettingsActivity.KEY_NOTIF_GMAIL, true)) {
+                    if (config.isNotifGmail()) {
                         mNotifLayout.addNotification(mNotifCompact.checkGmail(mDate.getContext()));
                     }
-                    if (isPrefEnabled(ScreensaverSettingsActivity.KEY_NOTIF_SMS, true)) {
+                    if (config.isNotifSms()) {
                         mNotifLayout.addNotification(mNotifCompact.checkSMS(mDate.getContext()));
                     }
-                    if (isPrefEnabled(ScreensaverSettingsActivity.KEY_NOTIF_MISSED_CALLS, true)) {
+                    if (config.isNotifMissedCalls()) {
                         mNotifLayout.addNotification(mNotifCompact.checkMissedCalls(mDate.getContext()));
                     }
                     mHandler.post(new Runnable() {
@@ -366,9 +298,5 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
         }.start();
     }
 
-    public boolean isPrefEnabled(String prefName, boolean defValue) {
-        return PreferenceManager.getDefaultSharedPreferences(mDate.getContext()).getBoolean(prefName, defValue);
-    }
-
 
 }
@@ -1,24 +1,18 @@
 
 package ca.mlaflamme.clocktime;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
-import android.animation.TimeInterpolator;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.Paint;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.service.notification.StatusBarNotification;
 import android.view.View;
-import android.view.animation.AccelerateInterpolator;
-import android.view.animation.DecelerateInterpolator;
 import android.widget.TextView;
 import ca.mlaflamme.clocktime.notification.NotificationInfo;
 import ca.mlaflamme.clocktime.notification.NotificationLayout;
@@ -31,14 +25,9 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     static final long MOVE_DELAY = 60000; // DeskClock.SCREEN_SAVER_MOVE_DELAY;
     static final long SLIDE_TIME = 10000;
     static final long FADE_TIME = 3000;
-    static final float MAX_SPACE_RATIO = 0.8f; //Safety measure to resize the content in case
-                                                // the content couldn't move.
-    static final float SHRINKING_RATIO = 0.85f; // Percentage of the original to shrink and
-                                                // expand before and after moving.
 
     public static final String ACTION_NLS_CONTROL = "ca.mlaflamme.clocktime.NOTIFICATION_LISTENER_SERVICE";
     public static final String ACTION_NLS_RESPONSE = "ca.mlaflamme.clocktime.NOTIFICATION_LISTENER";
-    static boolean mSlideEffect = true;
 
     private View mContentView, mSaverView;
     private TextView mDate;
@@ -47,10 +36,8 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     private TextView mNextAlarm;
     private final Handler mHandler;
 
-    private static TimeInterpolator mSlowStartWithBrakes;
-    private static float mSizeRatio;
+    private final ClockMover mMover = new ClockMover(MOVE_DELAY, SLIDE_TIME, FADE_TIME);
     private float mNextAlpha;
-    private float mLastAlpha = 0;
     private SensorManager mSensorManager;
     private NotificationReceiver mNotificationReceiver;
     private Sensor mLight;
@@ -62,21 +49,62 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     private float mAdjustBrightness;
     private Context mAppContext;
 
+    private UpdateGraph mGraph;
+
+    /* Each element is only redrawn when its own source changed */
+    private final UpdateGraph.Renderer mRenderer = new UpdateGraph.Renderer() {
+        @Override
+        public void render(int element) {
+            Context context = mDate.getContext();
+            switch (element) {
+                case UpdateGraph.DATE:
+                    Utils.setDateTextView(context, mDate, mDateFormat, mDateFormatForAccessibility);
+                    break;
+                case UpdateGraph.ALARM:
+                    Utils.setAlarmTextView(context, mNextAlarm);
+                    break;
+                case UpdateGraph.BATTERY:
+                    if (DisplayConfig.get(context).isBatteryShown()) {
+                        mBattery.setVisibility(View.VISIBLE);
+                        Utils.setBatteryStatus(context, mBattery);
+                    } else {
+                        mBattery.setVisibility(View.GONE);
+                    }
+                    break;
+            }
+        }
+    };
+
     public ScreensaverMoveSaverRunnable(Handler handler) {
         mHandler = handler;
         mInitSensor = false;
-        mSlowStartWithBrakes = new TimeInterpolator() {
-            @Override
-            public float getInterpolation(float x) {
-                return (float) (Math.cos((Math.pow(x, 3) + 1) * Math.PI) / 2.0f) + 0.5f;
-            }
-        };
         mNextAlpha = (float) ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT /
                 ScreensaverSettingsActivity.BRIGHTNESS_MAX;
     }
 
     public void setSlideEffect(boolean useSlideEffect) {
-        mSlideEffect = useSlideEffect;
+        mMover.setSlideEffect(useSlideEffect);
+    }
+
+    /**
+     * @see ClockMover#setPixelShift
+     */
+    public void setPixelShift(boolean usePixelShift) {
+        mMover.setPixelShift(usePixelShift);
+    }
+
+    /**
+     * Replaces the default policy deciding when the clock moves.
+     */
+    public void setMovePolicy(MoveScheduler.Policy policy) {
+        mMover.setMovePolicy(policy);
+    }
+
+    /**
+     * @param paint the paint of the layer of the saver view, applied to its snapshots too
+     */
+    public void setLayerPaint(Paint paint) {
+        mMover.setLayerPaint(paint);
     }
 
     public void setAutoBrightness(boolean useAutoBrightness, float adjFactor) {
@@ -98,6 +126,11 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     }
 
     public void registerViews(View contentView, View saverView) {
+        // A new layout, like after a rotation, would keep a running slide and its snapshot on
+        // the old views
+        if (mSaverView != null && mSaverView != saverView) {
+            mMover.release();
+        }
         mContentView = contentView;
         mDate = (TextView) contentView.findViewById(R.id.date);
         mBattery = (TextView) contentView.findViewById(R.id.battery);
@@ -110,12 +143,27 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
         mDateFormat = mContentView.getContext().getString(R.string.abbrev_wday_month_day_no_year);
         mDateFormatForAccessibility = mContentView.getContext().getString(R.string.full_wday_month_day_no_year);
 
-        handleUpdate();
+        // The analog clock may show seconds, a snapshot would freeze them during the slide
+        mMover.setSnapshotSlide(!Utils.CLOCK_TYPE_ANALOG.equals(
+                DisplayConfig.get(contentView.getContext()).getClockStyle()));
+
+        if (mGraph == null) {
+            mMover.start(contentView.getContext());
+            mGraph = new UpdateGraph(contentView.getContext(),
+                    UpdateGraph.DATE | UpdateGraph.ALARM | UpdateGraph.BATTERY, mRenderer);
+        }
+        mGraph.start();
     }
 
     public void unregister() {
         stopReceivingNotif();
 
+        if (mGraph != null)
+            mGraph.stop();
+
+        if (mContentView != null && mSaverView != null)
+            mMover.stop(mContentView, mSaverView);
+
         if (mSensorManager != null)
             mSensorManager.unregisterListener(this);
     }
@@ -131,8 +179,6 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
             handleLightSensorChanges(event.values);
     }
 
-    // TODO: slow down the frequency after 1h
-    // TODO: accellerate frequency 1h before wakeup alarm
     private void handleLightSensorChanges(float[] values) {
         float luxLight = values[0];
         // Do something with this sensor data.
@@ -184,86 +230,9 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
         }
 
 
-        final float xrange = mContentView.getWidth() - mSaverView.getWidth();
-        final float yrange = mContentView.getHeight() - mSaverView.getHeight();
-        Log.v("xrange: " + xrange + " yrange: " + yrange + " mNextAlpha: " + mNextAlpha);
-
-        if (xrange == 0 && yrange == 0) {
+        delay = mMover.move(mContentView, mSaverView, mNextAlpha, mUseAutoBrightness);
+        if (delay == 0) {
             delay = 500; // back in a split second
-        } else {
-            final int nextx = (int) (Math.random() * xrange);
-            final int nexty = (int) (Math.random() * yrange);
-
-            AnimatorSet s = new AnimatorSet();
-
-            if (mSaverView.getAlpha() == 0f) {
-                // jump right there
-                mSaverView.setX(nextx);
-                mSaverView.setY(nexty);
-
-                schickIfTooBig(s);
-                Animator appear = ObjectAnimator.ofFloat(mSaverView, "alpha", 0f, mNextAlpha).setDuration(FADE_TIME);
-                s.play(appear);
-            } else {
-
-                Animator xMove = ObjectAnimator.ofFloat(mSaverView, "x", mSaverView.getX(), nextx);
-                Animator yMove = ObjectAnimator.ofFloat(mSaverView, "y", mSaverView.getY(), nexty);
-
-                Animator xShrink = ObjectAnimator.ofFloat(mSaverView, "scaleX", mSizeRatio, mSizeRatio * SHRINKING_RATIO);
-                Animator xGrow = ObjectAnimator.ofFloat(mSaverView, "scaleX", mSizeRatio * SHRINKING_RATIO, mSizeRatio);
-
-                Animator yShrink = ObjectAnimator.ofFloat(mSaverView, "scaleY", mSizeRatio, mSizeRatio * SHRINKING_RATIO);
-                Animator yGrow = ObjectAnimator.ofFloat(mSaverView, "scaleY", mSizeRatio * SHRINKING_RATIO, mSizeRatio);
-
-                AnimatorSet shrink = new AnimatorSet();
-                shrink.play(xShrink).with(yShrink);
-                AnimatorSet grow = new AnimatorSet();
-                grow.play(xGrow).with(yGrow);
-
-                Animator fadeout = ObjectAnimator.ofFloat(mSaverView, "alpha", mLastAlpha, 0f);
-                Animator fadein = ObjectAnimator.ofFloat(mSaverView, "alpha", 0f, mNextAlpha);
-                Animator adjbrigh = ObjectAnimator.ofFloat(mSaverView, "alpha", mLastAlpha, mNextAlpha);
-
-
-                if (mSlideEffect) {
-                    s.play(xMove).with(yMove).with(adjbrigh);
-                    s.setDuration(SLIDE_TIME);
-
-                    s.play(shrink.setDuration(SLIDE_TIME / 2));
-                    s.play(grow.setDuration(SLIDE_TIME / 2)).after(shrink);
-                    s.setInterpolator(mSlowStartWithBrakes);
-                } else {
-                    AccelerateInterpolator accel = new AccelerateInterpolator();
-                    DecelerateInterpolator decel = new DecelerateInterpolator();
-
-                    shrink.setDuration(FADE_TIME).setInterpolator(accel);
-                    fadeout.setDuration(FADE_TIME).setInterpolator(accel);
-                    grow.setDuration(FADE_TIME).setInterpolator(decel);
-                    fadein.setDuration(FADE_TIME).setInterpolator(decel);
-                    s.play(shrink);
-                    s.play(fadeout);
-                    s.play(xMove.setDuration(0)).after(FADE_TIME);
-                    s.play(yMove.setDuration(0)).after(FADE_TIME);
-                    s.play(fadein).after(FADE_TIME);
-                    s.play(grow).after(FADE_TIME);
-                }
-            }
-            s.start();
-
-            mHandler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    handleUpdate();
-                }
-            }, FADE_TIME);
-
-            mLastAlpha = mNextAlpha;
-
-            long now = System.currentTimeMillis();
-            long adjust = (now % MOVE_DELAY);
-            delay = delay + (MOVE_DELAY - adjust) // minute aligned
-                    - (mSlideEffect ? 0 : FADE_TIME) // start moving before the fade
-            ;
         }
 
         mHandler.removeCallbacks(this);
@@ -271,39 +240,18 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
     }
 
 
-    private void schickIfTooBig(AnimatorSet s) {
-        final float xRatio = (float) mSaverView.getWidth() / mContentView.getWidth();
-        final float yRatio = (float) mSaverView.getHeight() / mContentView.getHeight();
-        final float biggerRatio = xRatio > yRatio ? xRatio : yRatio;
-
-        if (biggerRatio > MAX_SPACE_RATIO) {
-            mSizeRatio = MAX_SPACE_RATIO / biggerRatio;
-
-            Animator xShrink = ObjectAnimator.ofFloat(mSaverView, "scaleX", 1, mSizeRatio);
-            Animator yShrink = ObjectAnimator.ofFloat(mSaverView, "scaleY", 1, mSizeRatio);
-
-            s.play(xShrink).with(yShrink);
-        }
-        else
-            mSizeRatio = 1;
-    }
-
+    /**
+     * Redraws the elements whose source changed since they were last drawn, the others are
+     * left untouched.
+     */
     public void handleUpdate() {
+        if (mGraph == null)
+            return;
         try {
-            Utils.setAlarmTextView(mDate.getContext(), mNextAlarm);
-            Utils.setDateTextView(mDate.getContext(), mDate, mDateFormat, mDateFormatForAccessibility);
-
-            if (isPrefEnabled(ScreensaverSettingsActivity.KEY_BATTERY, true)) {
-                mBattery.setVisibility(View.VISIBLE);
-                Utils.setBatteryStatus(mDate.getContext(), mBattery);
-            } else {
-                mBattery.setVisibility(View.GONE);
-            }
-
+            mGraph.requestUpdate();
         } catch (Exception e) {
             e.printStackTrace();
         }
-
     }
 
     private void stopReceivingNotif() {
@@ -315,10 +263,6 @@ public class ScreensaverMoveSaverRunnable implements Runnable, SensorEventListen
         }
     }
 
-    public boolean isPrefEnabled(String prefName, boolean defValue) {
-        return PreferenceManager.getDefaultSharedPreferences(mDate.getContext()).getBoolean(prefName, defValue);
-    }
-
     class NotificationReceiver extends BroadcastReceiver {
 
         @Override
@@ -16,31 +16,32 @@
 
 package ca.mlaflamme.clocktime;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
 import android.support.v4.content.ContextCompat;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
 import android.view.View;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-
 /**
  * This widget display an analogic clock with two hands for hours and
  * minutes.
+ * <p>
+ * By default the dial and the jewel are rasterized once per size into a cached bitmap. The
+ * per-second tick then only invalidates the area swept by the second hand, the hour and minute
+ * hands being redrawn when their tip moved by at least one pixel. The dirty area only spares work
+ * when drawing in software, hardware accelerated windows redraw the whole view anyway.
  */
-public class AnalogClock extends View {
+public class AnalogClock extends View implements ClockTicker.OnTickListener {
     private final static String TAG = Utils.class.getName();
-    private Calendar mCalendar;
 
     private final Drawable mHourHand;
     private final Drawable mMinuteHand;
@@ -52,18 +53,26 @@ public class AnalogClock extends View {
 
     private boolean mAttached;
 
-    private final Handler mHandler = new Handler();
-    private float mSeconds;
-    private float mMinutes;
-    private float mHour;
+    private float mSecondAngle;
+    private float mMinuteAngle;
+    private float mHourAngle;
     private boolean mChanged;
     private final Context mContext;
-    private boolean mNoSeconds = false;
+    private boolean mHandsEnabled = true;
 
     private final float mDotRadius;
     private final float mDotOffset;
     private Paint mDotPaint;
 
+    private boolean mDialCacheEnabled = true;
+    private Bitmap mDialCache;
+    private float mScale = 1.0f;
+    private RectF mHourExtent, mMinuteExtent, mSecondExtent;
+    private float mDrawnHourAngle, mDrawnMinuteAngle, mDrawnSecondAngle;
+    private boolean mHandsDrawn;
+    private final Rect mDirty = new Rect();
+    private final Rect mHandBounds = new Rect();
+
     public AnalogClock(Context context) {
         this(context, null);
     }
@@ -77,12 +86,16 @@ public class AnalogClock extends View {
         super(context, attrs, defStyle);
         mContext = context;
 
-        mDial = ContextCompat.getDrawable(context, R.drawable.clock_analog_dial_mipmap);
-        mHourHand = ContextCompat.getDrawable(context, R.drawable.clock_analog_hour_mipmap);
-        mMinuteHand = ContextCompat.getDrawable(context, R.drawable.clock_analog_minute_mipmap);
-        mSecondHand = ContextCompat.getDrawable(context, R.drawable.clock_analog_second_mipmap);
-
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AnalogClock);
+        mDial = getDrawable(context, a, R.styleable.AnalogClock_android_dial,
+                R.drawable.clock_analog_dial_mipmap);
+        mHourHand = getDrawable(context, a, R.styleable.AnalogClock_android_hand_hour,
+                R.drawable.clock_analog_hour_mipmap);
+        mMinuteHand = getDrawable(context, a, R.styleable.AnalogClock_android_hand_minute,
+                R.drawable.clock_analog_minute_mipmap);
+        mSecondHand = getDrawable(context, a, R.styleable.AnalogClock_handSecond,
+                R.drawable.clock_analog_second_mipmap);
+
         mDotRadius = a.getDimension(R.styleable.AnalogClock_jewelRadius, 0);
         mDotOffset = a.getDimension(R.styleable.AnalogClock_jewelOffset, 0);
         final int dotColor = a.getColor(R.styleable.AnalogClock_jewelColor, Color.WHITE);
@@ -92,51 +105,71 @@ public class AnalogClock extends View {
             mDotPaint.setColor(dotColor);
         }
 
-        mCalendar = new GregorianCalendar();
-
         mDialWidth = mDial.getIntrinsicWidth();
         mDialHeight = mDial.getIntrinsicHeight();
 
         a.recycle();
     }
 
+    private static Drawable getDrawable(Context context, TypedArray a, int index, int defaultId) {
+        Drawable drawable = a.getDrawable(index);
+        return drawable != null ? drawable : ContextCompat.getDrawable(context, defaultId);
+    }
+
+    public Drawable getHourHand() { return mHourHand; }
+
+    public Drawable getMinuteHand() { return mMinuteHand; }
+
+    public Drawable getSecondHand() { return mSecondHand; }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
 
         if (!mAttached) {
             mAttached = true;
-            IntentFilter filter = new IntentFilter();
-
-            filter.addAction(Intent.ACTION_TIME_TICK);
-            filter.addAction(Intent.ACTION_TIME_CHANGED);
-            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-
-            getContext().registerReceiver(mIntentReceiver, filter, null, mHandler);
+            if (mHandsEnabled) {
+                subscribe();
+            }
         }
+    }
 
-        // NOTE: It's safe to do these after registering the receiver since the receiver always runs
-        // in the main thread, therefore the receiver can't run before this method returns.
-
-        // The time zone may have changed while the receiver wasn't registered, so update the Time
-        mCalendar = new GregorianCalendar();
+    private void subscribe() {
+        ClockTicker ticker = ClockTicker.getInstance(getContext());
+        ticker.addListener(this, ClockTicker.SECOND);
 
         // Make sure we update to the current time
-        onTimeChanged();
-
-        // tick the seconds
-        post(mClockTick);
-
+        onTimeChanged(ticker);
+        updateContentDescription(ticker);
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         if (mAttached) {
-            getContext().unregisterReceiver(mIntentReceiver);
-            removeCallbacks(mClockTick);
+            ClockTicker.getInstance(getContext()).removeListener(this);
             mAttached = false;
         }
+        releaseDialCache();
+    }
+
+    /**
+     * Without hands the view only draws the dial and the jewel and does not follow the time,
+     * the hands being rendered by {@link LayeredAnalogClock}.
+     */
+    public void setHandsEnabled(boolean enabled) {
+        if (mHandsEnabled == enabled) {
+            return;
+        }
+        mHandsEnabled = enabled;
+        if (mAttached) {
+            if (enabled) {
+                subscribe();
+            } else {
+                ClockTicker.getInstance(getContext()).removeListener(this);
+            }
+        }
+        invalidate();
     }
 
     @Override
@@ -168,12 +201,43 @@ public class AnalogClock extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         mChanged = true;
+        releaseDialCache();
+
+        mScale = 1.0f;
+        if (w < mDialWidth || h < mDialHeight) {
+            mScale = Math.min((float) w / (float) mDialWidth, (float) h / (float) mDialHeight);
+        }
+    }
+
+    /**
+     * Enables the render mode with the dial cached in a bitmap and the per-second invalidation
+     * limited to the second hand. Enabled by default.
+     */
+    public void setDialCacheEnabled(boolean enabled) {
+        if (mDialCacheEnabled != enabled) {
+            mDialCacheEnabled = enabled;
+            releaseDialCache();
+            invalidate();
+        }
+    }
+
+    private void releaseDialCache() {
+        if (mDialCache != null) {
+            mDialCache.recycle();
+            mDialCache = null;
+        }
+        mHandsDrawn = false;
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
+        if (mDialCacheEnabled) {
+            drawCached(canvas);
+            return;
+        }
+
         boolean changed = mChanged;
         if (changed) {
             mChanged = false;
@@ -208,10 +272,10 @@ public class AnalogClock extends View {
             canvas.drawCircle(x, y - (h / 2) + mDotOffset, mDotRadius, mDotPaint);
         }
 
-        drawHand(canvas, mHourHand, x, y, mHour / 12.0f * 360.0f, changed);
-        drawHand(canvas, mMinuteHand, x, y, mMinutes / 60.0f * 360.0f, changed);
-        if (!mNoSeconds) {
-            drawHand(canvas, mSecondHand, x, y, mSeconds / 60.0f * 360.0f, changed);
+        if (mHandsEnabled) {
+            drawHand(canvas, mHourHand, x, y, mHourAngle, changed);
+            drawHand(canvas, mMinuteHand, x, y, mMinuteAngle, changed);
+            drawHand(canvas, mSecondHand, x, y, mSecondAngle, changed);
         }
 
         if (scaled) {
@@ -232,53 +296,204 @@ public class AnalogClock extends View {
         canvas.restore();
     }
 
-    private void onTimeChanged() {
-        mCalendar = new GregorianCalendar();
+    /**
+     * Draws the cached dial, then the hands at the angles last validated by {@link #onTick}.
+     */
+    private void drawCached(Canvas canvas) {
+        int availableWidth = getWidth();
+        int availableHeight = getHeight();
+        if (availableWidth == 0 || availableHeight == 0) {
+            return;
+        }
 
-        int hour = mCalendar.get(Calendar.HOUR);
-        int minute = mCalendar.get(Calendar.MINUTE);
-        int second = mCalendar.get(Calendar.SECOND);
-        //      long millis = System.currentTimeMillis() % 1000;
+        int x = availableWidth / 2;
+        int y = availableHeight / 2;
 
-        mSeconds = second;//(float) ((second * 1000 + millis) / 166.666);
-        mMinutes = minute + second / 60.0f;
-        mHour = hour + mMinutes / 60.0f;
-        mChanged = true;
+        if (mDialCache == null) {
+            mDialCache = Bitmap.createBitmap(availableWidth, availableHeight, Bitmap.Config.ARGB_8888);
+            Canvas dialCanvas = new Canvas(mDialCache);
+            dialCanvas.scale(mScale, mScale, x, y);
 
-        updateContentDescription(mCalendar);
-    }
+            int w = mDial.getIntrinsicWidth();
+            int h = mDial.getIntrinsicHeight();
+            mDial.setBounds(x - (w / 2), y - (h / 2), x + (w / 2), y + (h / 2));
+            mDial.draw(dialCanvas);
 
-    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED)) {
-                mCalendar = new GregorianCalendar();
+            if (mDotRadius > 0f && mDotPaint != null) {
+                dialCanvas.drawCircle(x, y - (h / 2) + mDotOffset, mDotRadius, mDotPaint);
             }
-            onTimeChanged();
+            mChanged = true;
+        }
+
+        boolean changed = mChanged;
+        mChanged = false;
+
+        canvas.drawBitmap(mDialCache, 0, 0, null);
+
+        boolean scaled = mScale != 1.0f;
+        if (scaled) {
+            canvas.save();
+            canvas.scale(mScale, mScale, x, y);
+        }
+
+        if (!mHandsDrawn) {
+            mDrawnHourAngle = mHourAngle;
+            mDrawnMinuteAngle = mMinuteAngle;
+            mDrawnSecondAngle = mSecondAngle;
+            mHandsDrawn = true;
+        }
+
+        if (mHandsEnabled) {
+            drawHand(canvas, mHourHand, x, y, mDrawnHourAngle, changed);
+            drawHand(canvas, mMinuteHand, x, y, mDrawnMinuteAngle, changed);
+            drawHand(canvas, mSecondHand, x, y, mDrawnSecondAngle, changed);
+        }
+
+        if (scaled) {
+            canvas.restore();
+        }
+    }
+
+    /**
+     * Invalidates what moved since the last frame: the whole view when the hour or minute hand
+     * tip moved by a pixel, otherwise the union of the old and new second hand bounds. The bounds
+     * are ignored on hardware accelerated windows (API 21+), which redraw the whole view.
+     */
+    private void invalidateHands() {
+        if (!mDialCacheEnabled || mDialCache == null || !mHandsDrawn) {
             invalidate();
+            return;
         }
-    };
 
-    private final Runnable mClockTick = new Runnable() {
+        if (mHourExtent == null) {
+            mHourExtent = getOpaqueExtent(mHourHand);
+            mMinuteExtent = getOpaqueExtent(mMinuteHand);
+            mSecondExtent = getOpaqueExtent(mSecondHand);
+        }
 
-        @Override
-        public void run() {
-            onTimeChanged();
+        if (hasTipMoved(mHourExtent, mDrawnHourAngle, mHourAngle)
+                || hasTipMoved(mMinuteExtent, mDrawnMinuteAngle, mMinuteAngle)) {
+            mDrawnHourAngle = mHourAngle;
+            mDrawnMinuteAngle = mMinuteAngle;
+            mDrawnSecondAngle = mSecondAngle;
             invalidate();
-            AnalogClock.this.postDelayed(mClockTick, 1000);
+            return;
+        }
+
+        if (mDrawnSecondAngle == mSecondAngle) {
+            return;
+        }
+
+        getHandBounds(mSecondExtent, mDrawnSecondAngle, mDirty);
+        getHandBounds(mSecondExtent, mSecondAngle, mHandBounds);
+        mDirty.union(mHandBounds);
+        mDrawnSecondAngle = mSecondAngle;
+        invalidate(mDirty);
+    }
+
+    private boolean hasTipMoved(RectF extent, float fromAngle, float toAngle) {
+        float tipLength = Math.max(Math.max(Math.abs(extent.left), Math.abs(extent.right)),
+                Math.max(Math.abs(extent.top), Math.abs(extent.bottom)));
+        double delta = Math.toRadians(Math.abs(toAngle - fromAngle));
+        return delta * tipLength * mScale >= 1.0;
+    }
+
+    /**
+     * Computes the view bounds of a hand, from its opaque extent around the center rotated by the
+     * given angle.
+     */
+    private void getHandBounds(RectF extent, float angle, Rect out) {
+        final double radians = Math.toRadians(angle);
+        final float cos = (float) Math.cos(radians);
+        final float sin = (float) Math.sin(radians);
+        final float cx = getWidth() / 2;
+        final float cy = getHeight() / 2;
+
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            float px = (i & 1) == 0 ? extent.left : extent.right;
+            float py = (i & 2) == 0 ? extent.top : extent.bottom;
+            float rx = (px * cos - py * sin) * mScale + cx;
+            float ry = (px * sin + py * cos) * mScale + cy;
+            left = Math.min(left, rx);
+            top = Math.min(top, ry);
+            right = Math.max(right, rx);
+            bottom = Math.max(bottom, ry);
+        }
+
+        // A couple of pixels for the anti-aliasing
+        out.set((int) Math.floor(left) - 2, (int) Math.floor(top) - 2,
+                (int) Math.ceil(right) + 2, (int) Math.ceil(bottom) + 2);
+    }
+
+    /**
+     * The hands are full dial sized images: finds the box of their non transparent pixels,
+     * relative to the center and in intrinsic pixels. Only done once per hand.
+     */
+    private static RectF getOpaqueExtent(Drawable hand) {
+        final float halfWidth = hand.getIntrinsicWidth() / 2f;
+        final float halfHeight = hand.getIntrinsicHeight() / 2f;
+        RectF extent = new RectF(-halfWidth, -halfHeight, halfWidth, halfHeight);
+
+        if (!(hand instanceof BitmapDrawable)) {
+            return extent;
+        }
+        Bitmap bitmap = ((BitmapDrawable) hand).getBitmap();
+        if (bitmap == null || bitmap.getWidth() == 0 || bitmap.getHeight() == 0) {
+            return extent;
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        int[] row = new int[width];
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if (Color.alpha(row[x]) != 0) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) {
+            return extent;
+        }
+
+        final float ratioX = hand.getIntrinsicWidth() / (float) width;
+        final float ratioY = hand.getIntrinsicHeight() / (float) height;
+        extent.set(minX * ratioX - halfWidth, minY * ratioY - halfHeight,
+                (maxX + 1) * ratioX - halfWidth, (maxY + 1) * ratioY - halfHeight);
+        return extent;
+    }
+
+    private void onTimeChanged(ClockTicker ticker) {
+        TimeModel time = ticker.getTime();
+
+        mSecondAngle = time.getSecondAngle();
+        mMinuteAngle = time.getMinuteAngle();
+        mHourAngle = time.getHourAngle();
+        mChanged = true;
+    }
+
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        onTimeChanged(ticker);
+        if ((boundaries & ClockTicker.MINUTE) != 0) {
+            updateContentDescription(ticker);
         }
-    };
+        invalidateHands();
+    }
 
-    private void updateContentDescription(Calendar calendar) {
+    private void updateContentDescription(ClockTicker ticker) {
         final int flags = DateUtils.FORMAT_SHOW_TIME;
         String contentDescription = DateUtils.formatDateTime(mContext,
-                calendar.getTimeInMillis(), flags);
+                ticker.getTimeMillis(), flags);
         setContentDescription(contentDescription);
     }
 
-    public void enableSeconds(boolean enable) {
-        mNoSeconds = !enable;
-    }
-
 }
 
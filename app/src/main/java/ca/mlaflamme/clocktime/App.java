@@ -1,10 +1,17 @@
-
 package ca.mlaflamme.clocktime;
 
 import android.app.Application;
 
 public class App extends Application {
     private final static String TAG = Utils.class.getName();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Parsed once for the process, before the first clock is laid out
+        TypefaceRegistry.preload(this);
+    }
 }
 
 //TODO: Sizing issue on GS
\ No newline at end of file
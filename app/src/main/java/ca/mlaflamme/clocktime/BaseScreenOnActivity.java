@@ -17,51 +17,45 @@
 package ca.mlaflamme.clocktime;
 
 import android.app.Activity;
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.os.BatteryManager;
 import android.view.Window;
 import android.view.WindowManager;
 
-public abstract class BaseScreenOnActivity extends Activity {
+public abstract class BaseScreenOnActivity extends Activity
+        implements ClockTicker.OnTickListener, BatteryMonitor.OnBatteryChangeListener {
     private final static String TAG = Utils.class.getName();
 
-    private PendingIntent mQuarterlyIntent;
     private boolean mPluggedIn = true;
 
     private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
 
-            boolean changed = intent.getAction().equals(Intent.ACTION_TIME_CHANGED)
-                    || intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED);
-
-            if (intent.getAction().equals(Intent.ACTION_POWER_CONNECTED)) {
-                Log.v("ACTION_POWER_CONNECTED");
-                mPluggedIn = true;
-                setWakeLock();
-                changed = true;
-            } else if (intent.getAction().equals(Intent.ACTION_POWER_DISCONNECTED)) {
-                Log.v("ACTION_POWER_DISCONNECTED");
-                mPluggedIn = false;
-                setWakeLock();
-                changed = true;
-            } else if (intent.getAction().equals(Intent.ACTION_USER_PRESENT)) {
+            if (intent.getAction().equals(Intent.ACTION_USER_PRESENT)) {
                 finish();
-            } else if (intent.getAction().equals(Utils.ACTION_ON_QUARTER_HOUR) || changed) {
-                changed = true;
             }
+        }
+    };
 
-            if (changed) {
-                updateViews();
-            }
+    /* time or time zone changed, the shared ticker notifies it */
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        updateViews();
+    }
 
+    /* plugged in or unplugged, or the battery line changed */
+    @Override
+    public void onBatteryChanged(BatteryMonitor monitor) {
+        if (monitor.isPluggedIn() != mPluggedIn) {
+            Log.v("Plugged in: " + monitor.isPluggedIn());
+            mPluggedIn = monitor.isPluggedIn();
+            setWakeLock();
         }
-    };
+        updateViews();
+    }
 
     protected abstract void updateViews();
 
@@ -71,45 +65,25 @@ public abstract class BaseScreenOnActivity extends Activity {
     public void onStart() {
         super.onStart();
         IntentFilter filter = new IntentFilter();
-        filter.addAction(Intent.ACTION_POWER_CONNECTED);
-        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
         filter.addAction(Intent.ACTION_USER_PRESENT);
-        filter.addAction(Utils.ACTION_ON_QUARTER_HOUR);
-        filter.addAction(Intent.ACTION_TIME_CHANGED);
-        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
         registerReceiver(mIntentReceiver, filter);
+        ClockTicker.getInstance(this).addListener(this, ClockTicker.TIME_CHANGED);
+        BatteryMonitor.getInstance(this).addListener(this);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        Intent chargingIntent = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-
-        assert chargingIntent != null;
-        int plugged = chargingIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
-        mPluggedIn = plugged == BatteryManager.BATTERY_PLUGGED_AC
-                || plugged == BatteryManager.BATTERY_PLUGGED_USB
-                || plugged == BatteryManager.BATTERY_PLUGGED_WIRELESS;
+        // Subscribed since onStart, the monitor holds the current state
+        mPluggedIn = BatteryMonitor.getInstance(this).isPluggedIn();
 
         setWakeLock();
-
-        long alarmOnQuarterHour = Utils.getAlarmOnQuarterHour();
-        mQuarterlyIntent = PendingIntent.getBroadcast(this, 0, new Intent(Utils.ACTION_ON_QUARTER_HOUR), 0);
-        ((AlarmManager) getSystemService(Context.ALARM_SERVICE)).setRepeating(
-                AlarmManager.RTC,
-                alarmOnQuarterHour,
-                AlarmManager.INTERVAL_FIFTEEN_MINUTES,
-                mQuarterlyIntent);
-    }
-
-    @Override
-    public void onPause() {
-        ((AlarmManager) getSystemService(Context.ALARM_SERVICE)).cancel(mQuarterlyIntent);
-        super.onPause();
     }
 
     @Override
     public void onStop() {
+        ClockTicker.getInstance(this).removeListener(this);
+        BatteryMonitor.getInstance(this).removeListener(this);
         unregisterReceiver(mIntentReceiver);
         super.onStop();
     }
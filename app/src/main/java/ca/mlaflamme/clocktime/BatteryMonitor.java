@@ -0,0 +1,150 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Process-wide battery state, pushed by the battery broadcast.
+ * <p>
+ * The receiver is only registered while at least one subscriber is attached, the level, status
+ * and plug type are kept in primitive fields and the subscribers are only notified when what is
+ * displayed changes: the percentage, the charging state or being plugged in.
+ */
+public class BatteryMonitor {
+    private final static String TAG = Utils.class.getName();
+
+    public interface OnBatteryChangeListener {
+        void onBatteryChanged(BatteryMonitor monitor);
+    }
+
+    private static BatteryMonitor sInstance;
+
+    private final Context mAppContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ListenerList<OnBatteryChangeListener> mListeners = new ListenerList<>();
+    private boolean mRegistered;
+
+    private int mPercent = -1;
+    private int mStatus = -1;
+    private int mPlugged = -1;
+    private String mStatusText;
+
+    private final ListenerList.Dispatcher<OnBatteryChangeListener> mDispatcher =
+            new ListenerList.Dispatcher<OnBatteryChangeListener>() {
+        @Override
+        public void dispatch(OnBatteryChangeListener listener, int mask) {
+            listener.onBatteryChanged(BatteryMonitor.this);
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (update(intent)) {
+                mListeners.dispatch(mDispatcher);
+            }
+        }
+    };
+
+    private BatteryMonitor(Context context) {
+        mAppContext = context.getApplicationContext();
+    }
+
+    public static BatteryMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BatteryMonitor(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Subscribes a listener. The state can be read right away, the listener is only called back
+     * on the next change.
+     */
+    public void addListener(OnBatteryChangeListener listener) {
+        mListeners.add(listener);
+
+        if (!mRegistered) {
+            mRegistered = true;
+            // The broadcast is sticky: the current state comes back with the registration
+            Intent sticky = mAppContext.registerReceiver(mReceiver,
+                    new IntentFilter(Intent.ACTION_BATTERY_CHANGED), null, mHandler);
+            if (sticky != null) {
+                update(sticky);
+            }
+        }
+    }
+
+    public void removeListener(OnBatteryChangeListener listener) {
+        mListeners.remove(listener);
+
+        if (mListeners.isEmpty() && mRegistered) {
+            mRegistered = false;
+            mAppContext.unregisterReceiver(mReceiver);
+        }
+    }
+
+    /**
+     * @return true if what is displayed changed
+     */
+    private boolean update(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int percent = scale > 0 ? level * 100 / scale : -1;
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+
+        // The broadcast also comes for temperature and voltage changes
+        boolean changed = percent != mPercent || isCharging(status) != isCharging(mStatus)
+                || status == BatteryManager.BATTERY_STATUS_FULL
+                    != (mStatus == BatteryManager.BATTERY_STATUS_FULL)
+                || isPluggedIn(plugged) != isPluggedIn(mPlugged);
+        mPercent = percent;
+        mStatus = status;
+        mPlugged = plugged;
+        if (changed) {
+            mStatusText = null;
+        }
+        return changed;
+    }
+
+    private static boolean isCharging(int status) {
+        return status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+
+    private static boolean isPluggedIn(int plugged) {
+        return plugged == BatteryManager.BATTERY_PLUGGED_AC
+                || plugged == BatteryManager.BATTERY_PLUGGED_USB
+                || plugged == BatteryManager.BATTERY_PLUGGED_WIRELESS;
+    }
+
+    /** @return the battery level in percent, -1 when unknown */
+    public int getPercent() { return mPercent; }
+
+    public boolean isCharging() { return isCharging(mStatus); }
+
+    public boolean isFull() { return mStatus == BatteryManager.BATTERY_STATUS_FULL; }
+
+    /** @return true when unknown, like before any broadcast */
+    public boolean isPluggedIn() { return mPlugged == -1 || isPluggedIn(mPlugged); }
+
+    /**
+     * @return the text of the battery line, only rebuilt when the displayed state changed
+     */
+    public String getStatusText(Context context) {
+        if (mStatusText == null) {
+            StringBuilder text = new StringBuilder();
+            if (isCharging()) {
+                text.append(context.getString(R.string.battery_charging)).append(", ");
+            }
+            mStatusText = text.append(mPercent).append('%').toString();
+        }
+        return mStatusText;
+    }
+}
@@ -28,6 +28,19 @@ public class ClockActivity extends BaseScreenOnActivity {
     };
     private String mDateFormat;
     private String mDateFormatForAccessibility;
+    private UpdateGraph mGraph;
+
+    /* The date and the alarm are only redrawn when they changed */
+    private final UpdateGraph.Renderer mRenderer = new UpdateGraph.Renderer() {
+        @Override
+        public void render(int element) {
+            if (element == UpdateGraph.DATE) {
+                Utils.setDateTextView(ClockActivity.this, mDate, mDateFormat, mDateFormatForAccessibility);
+            } else if (element == UpdateGraph.ALARM) {
+                Utils.setAlarmTextView(ClockActivity.this, mNextAlarm);
+            }
+        }
+    };
     
 
     private void setClockStyle() {
@@ -51,6 +64,7 @@ public class ClockActivity extends BaseScreenOnActivity {
 
         mDateFormat = getString(R.string.abbrev_wday_month_day_no_year);
         mDateFormatForAccessibility = getString(R.string.full_wday_month_day_no_year);
+        mGraph = new UpdateGraph(this, UpdateGraph.DATE | UpdateGraph.ALARM, mRenderer);
 
         startScreenSaverRunnable.run();
     }
@@ -75,8 +89,8 @@ public class ClockActivity extends BaseScreenOnActivity {
         mDate = (TextView) findViewById(R.id.date);
         mNextAlarm = (TextView) findViewById(R.id.nextAlarm);
 
-
-        updateViews();
+        // The views were just inflated again, draws them all
+        mGraph.start();
 
 
         mHandler.postDelayed(startScreenSaverRunnable, SCREENSAVER_DELAY);
@@ -86,6 +100,7 @@ public class ClockActivity extends BaseScreenOnActivity {
     @Override
     public void onPause() {
         mHandler.removeCallbacks(startScreenSaverRunnable);
+        mGraph.stop();
         super.onPause();
     }
     
@@ -98,8 +113,7 @@ public class ClockActivity extends BaseScreenOnActivity {
 
     @Override
     protected void updateViews() {
-        Utils.setAlarmTextView(this, mNextAlarm);
-        Utils.setDateTextView(this, mDate, mDateFormat, mDateFormatForAccessibility);
+        mGraph.requestUpdate();
     }
 
     // TODO: Menu icon? Should I refresh the style?
@@ -0,0 +1,202 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.os.SystemClock;
+import android.view.View;
+
+/**
+ * Moves the clock of the screensaver: where to ({@link WearMap}), when ({@link MoveScheduler})
+ * and how ({@link MoveAnimator}). Shared by the runnables of every flavor, which only feed it the
+ * brightness and post it.
+ * <p>
+ * In pixel shift mode the clock stays where it appeared and steps around it once per minute, on
+ * the minute, whatever the interval of the scheduler.
+ */
+public class ClockMover {
+    private final static String TAG = Utils.class.getName();
+    private static final long MINUTE_MILLIS = 60000;
+    private static final float MAX_SPACE_RATIO = 0.8f; //Safety measure to resize the content in case
+                                                       // the content couldn't move.
+
+    private final long mFadeTime;
+    private final MoveAnimator mMoveAnimator;
+    private final MoveScheduler mScheduler;
+    private final Point mNextPosition = new Point();
+    private boolean mSlideEffect = true;
+    private boolean mPixelShift;
+    private WearMap mWearMap;
+    private long mPlacedAt;
+    private float mPlacedLevel;
+    private long mShiftMinute = -1;
+    private float mSizeRatio = 1;
+    private float mLastAlpha = 0;
+
+    /**
+     * @param moveDelay base interval between the moves
+     */
+    public ClockMover(long moveDelay, long slideTime, long fadeTime) {
+        mFadeTime = fadeTime;
+        mMoveAnimator = new MoveAnimator(slideTime, fadeTime);
+        mScheduler = new MoveScheduler(moveDelay, slideTime);
+    }
+
+    public void setSlideEffect(boolean useSlideEffect) {
+        mSlideEffect = useSlideEffect;
+    }
+
+    /**
+     * @param usePixelShift true to shift the clock by a few pixels instead of sliding or
+     *                      fading it to a new position
+     */
+    public void setPixelShift(boolean usePixelShift) {
+        mPixelShift = usePixelShift;
+    }
+
+    /**
+     * Replaces the default policy deciding when the clock moves.
+     */
+    public void setMovePolicy(MoveScheduler.Policy policy) {
+        mScheduler.setPolicy(policy);
+    }
+
+    /**
+     * @param paint the paint of the layer of the saver view, applied to its snapshots too
+     */
+    public void setLayerPaint(Paint paint) {
+        mMoveAnimator.setSnapshotPaint(paint);
+    }
+
+    /**
+     * @param snapshotSlide false when the clock changes during a slide, like analog seconds
+     */
+    public void setSnapshotSlide(boolean snapshotSlide) {
+        mMoveAnimator.setSnapshotSlide(snapshotSlide);
+    }
+
+    /**
+     * Starts counting the running time and the wear, when the screensaver starts.
+     */
+    public void start(Context context) {
+        mScheduler.reset();
+        mWearMap = WearMap.getInstance(context);
+    }
+
+    /**
+     * Ends the animations and frees the snapshot, when the views they run on are replaced.
+     */
+    public void release() {
+        mMoveAnimator.release();
+    }
+
+    /**
+     * Ends the animations and writes the wear, when the screensaver ends.
+     */
+    public void stop(View contentView, View saverView) {
+        mMoveAnimator.release();
+        if (mWearMap != null) {
+            recordWear(contentView, saverView);
+            mPlacedAt = 0;
+            mWearMap.save();
+        }
+        if (Log.LOGV) Log.v("Move scheduler: " + mScheduler.getStats());
+    }
+
+    /**
+     * Moves the clock if the scheduler decides so, otherwise only brings it to the new alpha.
+     *
+     * @param alpha the alpha the clock is shown with from now on
+     * @param autoBrightness true when the alpha alone sets the brightness, false when the layer
+     *                       of the clock dims it further
+     * @return the delay until the next call, 0 when the views are not laid out yet
+     */
+    public long move(View contentView, View saverView, float alpha, boolean autoBrightness) {
+        final float xrange = contentView.getWidth() - saverView.getWidth();
+        final float yrange = contentView.getHeight() - saverView.getHeight();
+        Log.v("xrange: " + xrange + " yrange: " + yrange + " alpha: " + alpha);
+
+        if (xrange == 0 && yrange == 0) {
+            return 0;
+        }
+
+        Context context = saverView.getContext();
+        float level = getDisplayedLevel(alpha, autoBrightness, DisplayConfig.get(context));
+        int decision = mScheduler.decide(NextAlarmProvider.getInstance(context).getTriggerTime(), level);
+        long interval = mScheduler.getInterval(decision);
+        long now = System.currentTimeMillis();
+
+        // The screen under the clock wore since the last move
+        recordWear(contentView, saverView);
+        mPlacedLevel = level;
+
+        // Shifting around the position the clock appeared at
+        boolean appearing = saverView.getAlpha() == 0f;
+        if (appearing || decision != MoveScheduler.SKIP && !mPixelShift) {
+            mWearMap.nextPosition(contentView.getWidth(), contentView.getHeight(),
+                    saverView.getWidth(), saverView.getHeight(), xrange, yrange, mNextPosition);
+        }
+        final int nextx = mNextPosition.x;
+        final int nexty = mNextPosition.y;
+
+        if (appearing) {
+            // jump right there
+            fitIfTooBig(contentView, saverView);
+            mMoveAnimator.appear(saverView, nextx, nexty, mSizeRatio, alpha);
+            mShiftMinute = now / MINUTE_MILLIS;
+        } else if (decision == MoveScheduler.SKIP
+                || mPixelShift && now / MINUTE_MILLIS == mShiftMinute) {
+            // too dim to burn in, or already shifted this minute: only follows the light
+            saverView.setAlpha(alpha);
+        } else if (mPixelShift) {
+            mMoveAnimator.shift(saverView, nextx, nexty, xrange, yrange, alpha);
+            mShiftMinute = now / MINUTE_MILLIS;
+        } else if (mSlideEffect) {
+            mMoveAnimator.slide(saverView, nextx, nexty, mSizeRatio, mLastAlpha, alpha);
+        } else {
+            mMoveAnimator.fade(saverView, nextx, nexty, mSizeRatio, mLastAlpha, alpha);
+        }
+
+        mLastAlpha = alpha;
+
+        long adjust = (now % interval);
+        if (mPixelShift) {
+            // back on the next minute at the latest, the shift steps on each of them
+            return Math.min(interval - adjust, MINUTE_MILLIS - now % MINUTE_MILLIS);
+        }
+        return interval + (interval - adjust) // interval aligned
+                - (mSlideEffect ? 0 : mFadeTime) // start moving before the fade
+        ;
+    }
+
+    private void recordWear(View contentView, View saverView) {
+        long now = SystemClock.elapsedRealtime();
+        if (mPlacedAt != 0 && saverView.getAlpha() > 0) {
+            mWearMap.addWear(contentView.getWidth(), contentView.getHeight(),
+                    saverView.getX(), saverView.getY(), saverView.getWidth(),
+                    saverView.getHeight(), mPlacedLevel * (now - mPlacedAt) / 1000f);
+        }
+        mPlacedAt = now;
+    }
+
+    /**
+     * @return how bright the clock is shown, its alpha dimmed by its layer
+     */
+    private static float getDisplayedLevel(float alpha, boolean autoBrightness,
+                                           DisplayConfig config) {
+        if (autoBrightness)
+            return alpha;
+        return alpha * config.getBrightness() / ScreensaverSettingsActivity.BRIGHTNESS_MAX;
+    }
+
+    private void fitIfTooBig(View contentView, View saverView) {
+        final float xRatio = (float) saverView.getWidth() / contentView.getWidth();
+        final float yRatio = (float) saverView.getHeight() / contentView.getHeight();
+        final float biggerRatio = xRatio > yRatio ? xRatio : yRatio;
+
+        if (biggerRatio > MAX_SPACE_RATIO)
+            mSizeRatio = MAX_SPACE_RATIO / biggerRatio;
+        else
+            mSizeRatio = 1;
+    }
+}
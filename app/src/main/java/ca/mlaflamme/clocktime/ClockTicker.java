@@ -0,0 +1,237 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Process-wide clock driving every time display of the app.
+ * <p>
+ * A single boundary-aligned schedule replaces the per-view tick receivers and handlers: the time
+ * fields are computed once per tick and fanned out to the subscribers interested in the crossed
+ * boundaries. The system time receivers are only registered while at least one subscriber is
+ * attached.
+ */
+public class ClockTicker {
+    private final static String TAG = Utils.class.getName();
+
+    /** A new second started. */
+    public static final int SECOND = 1;
+    /** A new minute started. */
+    public static final int MINUTE = 1 << 1;
+    /** A new quarter-hour started (e.g. Kathmandu is GMT+5:45). */
+    public static final int QUARTER_HOUR = 1 << 2;
+    /** A new local day started. */
+    public static final int DAY = 1 << 3;
+    /** The wall clock or the time zone was changed by the system. */
+    public static final int TIME_CHANGED = 1 << 4;
+
+    private static final long SECOND_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    private static final long QUARTER_HOUR_MILLIS = 15 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 96 * QUARTER_HOUR_MILLIS;
+
+    public interface OnTickListener {
+        /**
+         * @param ticker the ticker holding the current time fields
+         * @param boundaries the boundaries crossed since the last tick, as a mask of
+         *                   {@link #SECOND}, {@link #MINUTE}, {@link #QUARTER_HOUR},
+         *                   {@link #DAY} and {@link #TIME_CHANGED}
+         */
+        void onTick(ClockTicker ticker, int boundaries);
+    }
+
+    private static ClockTicker sInstance;
+
+    private final Context mAppContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ListenerList<OnTickListener> mListeners = new ListenerList<>();
+    private boolean mRegistered;
+
+    private final TimeModel mTime = new TimeModel();
+    private Calendar mCalendar = Calendar.getInstance();
+    private boolean mCalendarStale = true;
+    private int mSecond = -1;
+    private int mMinute = -1;
+    private int mQuarterHour = -1;
+    private long mLocalDay = -1;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            tick(0);
+        }
+    };
+
+    private final ListenerList.Dispatcher<OnTickListener> mDispatcher =
+            new ListenerList.Dispatcher<OnTickListener>() {
+        @Override
+        public void dispatch(OnTickListener listener, int boundaries) {
+            listener.onTick(ClockTicker.this, boundaries);
+        }
+    };
+
+    private final BroadcastReceiver mTimeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                resetTimeZone();
+            }
+            tick(TIME_CHANGED | SECOND | MINUTE | QUARTER_HOUR | DAY);
+        }
+    };
+
+    private ClockTicker(Context context) {
+        mAppContext = context.getApplicationContext();
+    }
+
+    public static ClockTicker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ClockTicker(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Subscribes a listener to the given boundaries. Subscribing an already registered listener
+     * replaces its granularity. The listener is not called back immediately, the current time
+     * fields can be read right away after {@link #refresh()}.
+     */
+    public void addListener(OnTickListener listener, int granularity) {
+        mListeners.add(listener, granularity | TIME_CHANGED);
+
+        if (!mRegistered) {
+            mRegistered = true;
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            mAppContext.registerReceiver(mTimeReceiver, filter, null, mHandler);
+
+            // The time zone may have changed while the receiver wasn't registered
+            resetTimeZone();
+        }
+
+        refresh();
+        schedule();
+    }
+
+    public void removeListener(OnTickListener listener) {
+        if (!mListeners.remove(listener)) {
+            return;
+        }
+
+        if (mListeners.isEmpty() && mRegistered) {
+            mRegistered = false;
+            mAppContext.unregisterReceiver(mTimeReceiver);
+            mHandler.removeCallbacks(mTick);
+        } else {
+            schedule();
+        }
+    }
+
+    /**
+     * Updates the time fields to the current time without notifying the subscribers.
+     */
+    public void refresh() {
+        mTime.update();
+        mCalendarStale = true;
+        mSecond = mTime.getSecond();
+        mMinute = mTime.getMinute();
+        mQuarterHour = mTime.getHourOfDay() * 4 + mMinute / 15;
+        mLocalDay = mTime.getLocalDay();
+    }
+
+    private void resetTimeZone() {
+        mCalendar = Calendar.getInstance();
+        mTime.setTimeZone(mCalendar.getTimeZone());
+    }
+
+    /**
+     * @return the primitive time of the last tick, shared with the other subscribers and
+     * therefore not to be modified.
+     */
+    public TimeModel getTime() { return mTime; }
+
+    public long getTimeMillis() { return mTime.getTimeMillis(); }
+
+    public int getHourOfDay() { return mTime.getHourOfDay(); }
+
+    public int getMinute() { return mMinute; }
+
+    public int getSecond() { return mSecond; }
+
+    /**
+     * @return the calendar holding the time of the last tick, shared with the other subscribers
+     * and therefore not to be modified. Only synchronized on demand, the tick itself does not
+     * touch it.
+     */
+    public Calendar getCalendar() {
+        if (mCalendarStale) {
+            mCalendarStale = false;
+            mCalendar.setTimeInMillis(mTime.getTimeMillis());
+        }
+        return mCalendar;
+    }
+
+    private void tick(int forced) {
+        int second = mSecond;
+        int minute = mMinute;
+        int quarterHour = mQuarterHour;
+        long localDay = mLocalDay;
+
+        refresh();
+
+        int boundaries = forced;
+        if (second != mSecond) boundaries |= SECOND;
+        if (minute != mMinute) boundaries |= SECOND | MINUTE;
+        if (quarterHour != mQuarterHour) boundaries |= SECOND | MINUTE | QUARTER_HOUR;
+        if (localDay != mLocalDay) boundaries |= SECOND | MINUTE | QUARTER_HOUR | DAY;
+
+        if (boundaries != 0) {
+            mListeners.dispatch(mDispatcher, boundaries);
+        }
+
+        schedule();
+    }
+
+    private void schedule() {
+        mHandler.removeCallbacks(mTick);
+        if (mListeners.isEmpty()) {
+            return;
+        }
+
+        int granularity = mListeners.getMasks();
+
+        long now = System.currentTimeMillis();
+        long delay;
+        if ((granularity & SECOND) != 0) {
+            delay = SECOND_MILLIS - now % SECOND_MILLIS;
+        } else if ((granularity & MINUTE) != 0) {
+            delay = MINUTE_MILLIS - now % MINUTE_MILLIS;
+        } else if ((granularity & QUARTER_HOUR) != 0) {
+            // Quarter-hours are aligned on the local time, not every zone is hour-locked
+            long local = now + mTime.getTimeZone().getOffset(now);
+            delay = QUARTER_HOUR_MILLIS - local % QUARTER_HOUR_MILLIS;
+        } else if ((granularity & DAY) != 0) {
+            // Local midnight, corrected when a DST transition happens before it
+            TimeZone zone = mTime.getTimeZone();
+            long offset = zone.getOffset(now);
+            delay = DAY_MILLIS - (now + offset) % DAY_MILLIS;
+            delay += offset - zone.getOffset(now + delay);
+            if (delay <= 0) {
+                delay += DAY_MILLIS;
+            }
+        } else {
+            return;
+        }
+
+        mHandler.postAtTime(mTick, SystemClock.uptimeMillis() + delay);
+    }
+}
@@ -0,0 +1,78 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+
+import java.util.HashMap;
+
+/**
+ * The colors offered by the color preferences, by stored name.
+ * <p>
+ * Built once from the clock_color_values names and the clock_color_resources colors, which the
+ * build resolves in the same order, instead of a by-name Resources.getIdentifier lookup for every
+ * color.
+ */
+public class ColorTable {
+    private final static String TAG = Utils.class.getName();
+
+    private static HashMap<String, Integer> sColors;
+
+    private ColorTable() {
+    }
+
+    /**
+     * @return the color of the name stored by a color preference, or of the default name if the
+     * stored one is not offered anymore
+     */
+    public static int getColor(Context context, String name, String defaultName) {
+        HashMap<String, Integer> colors = getColors(context);
+        Integer color = colors.get(name);
+        if (color == null) {
+            color = colors.get(defaultName);
+        }
+        return color != null ? color : 0xffffffff;
+    }
+
+    /**
+     * Replaces the stored color names that are not offered anymore by the default ones, so the
+     * preference screens show the color actually used.
+     */
+    public static void migrate(Context context, SharedPreferences pref) {
+        HashMap<String, Integer> colors = getColors(context);
+        Resources res = context.getResources();
+        String[][] keys = {
+                { ScreensaverSettingsActivity.KEY_CLOCK_COLOR, res.getString(R.string.default_clock_color) },
+                { ScreensaverSettingsActivity.KEY_DATE_COLOR, res.getString(R.string.default_date_color) },
+                { ScreensaverSettingsActivity.KEY_ALARM_COLOR, res.getString(R.string.default_alarm_color) },
+        };
+
+        SharedPreferences.Editor editor = null;
+        for (String[] key : keys) {
+            String name = pref.getString(key[0], null);
+            if (name != null && !colors.containsKey(name)) {
+                if (editor == null) editor = pref.edit();
+                editor.putString(key[0], key[1]);
+                Log.w("Unknown color " + name + " for " + key[0] + ", reset to " + key[1]);
+            }
+        }
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    private static HashMap<String, Integer> getColors(Context context) {
+        if (sColors == null) {
+            Resources res = context.getResources();
+            String[] names = res.getStringArray(R.array.clock_color_values);
+            TypedArray values = res.obtainTypedArray(R.array.clock_color_resources);
+            sColors = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length && i < values.length(); i++) {
+                sColors.put(names[i], values.getColor(i, 0xffffffff));
+            }
+            values.recycle();
+        }
+        return sColors;
+    }
+}
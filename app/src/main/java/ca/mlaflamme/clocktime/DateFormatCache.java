@@ -0,0 +1,64 @@
+package ca.mlaflamme.clocktime;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats today's date with formatters and texts kept per pattern.
+ * <p>
+ * The date changes once a day: a pattern is formatted again only on a new local day, and its
+ * formatter is only created again when the locale or the time zone changed. The formatters are
+ * shared and not thread-safe, only format from the main thread.
+ */
+public class DateFormatCache {
+    private final static String TAG = Utils.class.getName();
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static final class Entry {
+        final SimpleDateFormat format;
+        long localDay = Long.MIN_VALUE;
+        String text;
+
+        Entry(SimpleDateFormat format) {
+            this.format = format;
+        }
+    }
+
+    private static final HashMap<String, Entry> sEntries = new HashMap<>();
+    private static Locale sLocale;
+    private static TimeZone sTimeZone;
+
+    private DateFormatCache() {
+    }
+
+    /**
+     * @return today's date formatted with the pattern, the same instance for the whole day
+     */
+    public static String format(String pattern) {
+        Locale locale = Locale.getDefault();
+        TimeZone zone = TimeZone.getDefault();
+        if (!locale.equals(sLocale) || !zone.equals(sTimeZone)) {
+            // The formatters hold the locale and the zone they were created with
+            sEntries.clear();
+            sLocale = locale;
+            sTimeZone = zone;
+        }
+
+        Entry entry = sEntries.get(pattern);
+        if (entry == null) {
+            entry = new Entry(new SimpleDateFormat(pattern, locale));
+            sEntries.put(pattern, entry);
+        }
+
+        long now = System.currentTimeMillis();
+        long localDay = (now + zone.getOffset(now)) / DAY_MILLIS;
+        if (localDay != entry.localDay) {
+            entry.localDay = localDay;
+            entry.text = entry.format.format(new Date(now));
+        }
+        return entry.text;
+    }
+}
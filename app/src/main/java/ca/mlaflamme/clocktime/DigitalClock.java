@@ -16,77 +16,51 @@
 
 package ca.mlaflamme.clocktime;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.database.ContentObserver;
-import android.os.Handler;
-import android.provider.Settings;
-import android.text.format.DateFormat;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import java.text.DateFormatSymbols;
-import java.util.Calendar;
-
 /**
  * Displays the time
  */
-public class DigitalClock extends LinearLayout {
+public class DigitalClock extends LinearLayout implements ClockTicker.OnTickListener,
+        HourFormatObserver.OnHourFormatChangeListener {
     private final static String TAG = Utils.class.getName();
-    private final static String HOURS_24 = "kk";
-    private final static String HOURS = "h";
-    private final static String MINUTES = ":mm";
-    private final String mAmString, mPmString;
     private final static boolean lIVE = true;
 
-    private Calendar mCalendar;
-    private String mHoursFormat;
+    private TimeModel mTime;
+    private boolean m24HourMode;
+    private TimeFormatter mFormatter;
     private TextView mTimeDisplayHours, mTimeDisplayMinutes;
     private TextView mAmPm;
-    private ContentObserver mFormatChangeObserver;
+    private GlyphClockView mGlyphClock;
+    private boolean mUseGlyphAtlas;
     private boolean mAttached;
 
 
-    /* called by system on minute ticks */
-    private final Handler mHandler = new Handler();
-    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(
-                    Intent.ACTION_TIMEZONE_CHANGED)) {
-                mCalendar = Calendar.getInstance();
-            }
-            // Post a runnable to avoid blocking the broadcast.
-            mHandler.post(new Runnable() {
-                public void run() {
-                    updateTime();
-                }
-            });
-        }
-    };
+    /* called by the shared ticker on minute ticks */
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        mTime = ticker.getTime();
+        updateTime();
+    }
 
     private void setShowAmPm(boolean show) {
-        mAmPm.setVisibility(show ? View.VISIBLE : View.GONE);
+        mAmPm.setVisibility(show && !mUseGlyphAtlas ? View.VISIBLE : View.GONE);
     }
 
-    private void setIsMorning(boolean isMorning) {
-        mAmPm.setText(isMorning ? mAmString : mPmString);
+    private void setAmPm(int hourOfDay) {
+        String ampm = mFormatter.getAmPm(hourOfDay);
+        if (mAmPm.getText() != ampm) mAmPm.setText(ampm);
     }
 
-    private class FormatChangeObserver extends ContentObserver {
-        public FormatChangeObserver() {
-            super(new Handler());
-        }
-
-        @Override
-        public void onChange(boolean selfChange) {
-            setDateFormat();
-            updateTime();
-        }
+    /* called by the shared observer, once per burst of 12/24-hour setting changes */
+    @Override
+    public void onHourFormatChanged(boolean is24HourMode) {
+        setDateFormat();
+        updateTime();
     }
 
     public DigitalClock(Context context) {
@@ -95,10 +69,6 @@ public class DigitalClock extends LinearLayout {
 
     public DigitalClock(Context context, AttributeSet attrs) {
         super(context, attrs);
-
-        String[] ampm = new DateFormatSymbols().getAmPmStrings();
-        mAmString = ampm[0];
-        mPmString = ampm[1];
     }
 
     @Override
@@ -108,7 +78,7 @@ public class DigitalClock extends LinearLayout {
         mTimeDisplayHours = (TextView) findViewById(R.id.timeDisplayHours);
         mTimeDisplayMinutes = (TextView) findViewById(R.id.timeDisplayMinutes);
         mAmPm = (TextView) findViewById(R.id.am_pm);
-        mCalendar = Calendar.getInstance();
+        mGlyphClock = (GlyphClockView) findViewById(R.id.glyphClock);
 
         setDateFormat();
     }
@@ -125,18 +95,17 @@ public class DigitalClock extends LinearLayout {
 
         if (lIVE) {
             /* monitor time ticks, time changed, timezone */
-            IntentFilter filter = new IntentFilter();
-            filter.addAction(Intent.ACTION_TIME_TICK);
-            filter.addAction(Intent.ACTION_TIME_CHANGED);
-            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-            getContext().registerReceiver(mIntentReceiver, filter);
+            ClockTicker ticker = ClockTicker.getInstance(getContext());
+            ticker.addListener(this, ClockTicker.MINUTE);
+            mTime = ticker.getTime();
         }
 
         /* monitor 12/24-hour display preference */
-        mFormatChangeObserver = new FormatChangeObserver();
-        getContext().getContentResolver().registerContentObserver(
-                Settings.System.CONTENT_URI, true, mFormatChangeObserver);
+        HourFormatObserver.getInstance(getContext()).addListener(this);
 
+        // The text views are styled and resized by now, the atlases can copy them
+        mUseGlyphAtlas = mGlyphClock != null && isGlyphAtlasSize();
+        setDateFormat();
         updateTime();
     }
 
@@ -148,42 +117,81 @@ public class DigitalClock extends LinearLayout {
         mAttached = false;
 
         if (lIVE) {
-            getContext().unregisterReceiver(mIntentReceiver);
+            ClockTicker.getInstance(getContext()).removeListener(this);
+        }
+        HourFormatObserver.getInstance(getContext()).removeListener(this);
+
+        if (mGlyphClock != null) {
+            mGlyphClock.release();
         }
-        getContext().getContentResolver().unregisterContentObserver(
-                mFormatChangeObserver);
     }
 
-    private void updateTime() {
-        if (lIVE) {
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
+    /**
+     * At these sizes the glyphs exceed the hardware font cache, the time is drawn from atlases.
+     */
+    private boolean isGlyphAtlasSize() {
+        String size = DisplayConfig.get(getContext()).getClockSize();
+        return Utils.CLOCK_SIZE_XLARGE.equals(size) || Utils.CLOCK_SIZE_2XLARGE.equals(size);
+    }
+
+    private void updateRenderer() {
+        if (mGlyphClock == null) {
+            return;
+        }
+        if (mUseGlyphAtlas
+                && !mGlyphClock.setStyle(mTimeDisplayHours, mTimeDisplayMinutes, mAmPm, mFormatter)) {
+            // Glyphs bigger than a texture, back to the text views
+            mUseGlyphAtlas = false;
+        }
+        int textVisibility = mUseGlyphAtlas ? View.GONE : View.VISIBLE;
+        mTimeDisplayHours.setVisibility(textVisibility);
+        mTimeDisplayMinutes.setVisibility(textVisibility);
+        mGlyphClock.setVisibility(mUseGlyphAtlas ? View.VISIBLE : View.GONE);
+
+        if (!mUseGlyphAtlas) {
+            // Sized once for every possible time, a minute flip only redraws the text views
+            reserveTexts(mTimeDisplayHours, mFormatter.getHoursTable(), true);
+            reserveTexts(mTimeDisplayMinutes, mFormatter.getMinutesTable(), false);
+            reserveTexts(mAmPm, mFormatter.getAmPmTable(), false);
         }
+    }
+
+    private static void reserveTexts(TextView view, String[] texts, boolean alignRight) {
+        if (view instanceof FitRobotoTextView) {
+            ((FitRobotoTextView) view).setReservedTexts(texts, alignRight);
+        }
+    }
 
-        StringBuilder fullTimeStr = new StringBuilder();
-        CharSequence newTime = DateFormat.format(mHoursFormat, mCalendar);
-        mTimeDisplayHours.setText(newTime);
-//        mTimeDisplayHoursThin.setText(newTime);
-        fullTimeStr.append(newTime);
-        newTime = DateFormat.format(MINUTES, mCalendar);
-        fullTimeStr.append(newTime);
-        mTimeDisplayMinutes.setText(newTime);
-
-        boolean isMorning = mCalendar.get(Calendar.AM_PM) == 0;
-        setIsMorning(isMorning);
-        if (!Alarms.get24HourMode(getContext())) {
-            fullTimeStr.append(mAmPm.getText());
+    private void updateTime() {
+        // Array lookups, the tables are only rebuilt on a locale or 12/24-hour change
+        mFormatter = TimeFormatter.get(m24HourMode);
+        int hourOfDay = mTime.getHourOfDay();
+        String hours = mFormatter.getHours(hourOfDay);
+        String minutes = mFormatter.getMinutes(mTime.getMinute());
+
+        if (mUseGlyphAtlas) {
+            mGlyphClock.setTime(hours, minutes, hourOfDay);
+        } else {
+            // Same instances from the tables, unchanged texts are not even redrawn
+            if (mTimeDisplayHours.getText() != hours) mTimeDisplayHours.setText(hours);
+            if (mTimeDisplayMinutes.getText() != minutes) mTimeDisplayMinutes.setText(minutes);
+            setAmPm(hourOfDay);
         }
 
-        // Update accessibility string.
-        setContentDescription(fullTimeStr);
+        // Update accessibility string, same instance for the whole minute
+        String description = mFormatter.getContentDescription(hourOfDay, mTime.getMinute());
+        if (getContentDescription() != description) setContentDescription(description);
     }
 
     private void setDateFormat() {
-        mHoursFormat = Alarms.get24HourMode(getContext()) ? HOURS_24 : HOURS;
+        m24HourMode = HourFormatObserver.getInstance(getContext()).is24HourMode();
+        mFormatter = TimeFormatter.get(m24HourMode);
 
-        setShowAmPm(!Alarms.get24HourMode(getContext()));
+        updateRenderer();
+        setShowAmPm(!m24HourMode);
     }
 
 
 
+
 }
@@ -0,0 +1,225 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.preference.PreferenceManager;
+
+/**
+ * Immutable snapshot of the display settings, read once from the shared preferences.
+ * <p>
+ * The update paths run every few seconds; they read this snapshot instead of looking up and
+ * parsing preferences each time, and get the colors already resolved. A new snapshot is only
+ * built when a preference changes.
+ */
+public class DisplayConfig {
+    private final static String TAG = Utils.class.getName();
+
+    public interface OnConfigChangeListener {
+        /**
+         * @param config the new snapshot
+         * @param key the preference that changed
+         */
+        void onConfigChanged(DisplayConfig config, String key);
+    }
+
+    private static DisplayConfig sCurrent;
+    private static final ListenerList<OnConfigChangeListener> sListeners = new ListenerList<>();
+    private static String sChangedKey;
+    private static final ListenerList.Dispatcher<OnConfigChangeListener> sDispatcher =
+            new ListenerList.Dispatcher<OnConfigChangeListener>() {
+        @Override
+        public void dispatch(OnConfigChangeListener listener, int mask) {
+            listener.onConfigChanged(sCurrent, sChangedKey);
+        }
+    };
+
+    // Kept here, the shared preferences only hold a weak reference to their listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final String mClockStyle;
+    private final String mClockSize;
+    private final int mClockColor;
+    private final boolean mLandscapeBigger;
+
+    private final int mDateColor;
+    private final String mDateSize;
+    private final String mDateFont;
+
+    private final int mAlarmColor;
+    private final String mAlarmSize;
+    private final String mAlarmFont;
+    private final int mAlarmHideUntilSeconds;
+
+    private final String mBackgroundImagePath;
+    private final float mBackgroundAlpha;
+    private final String mWakeupImagePath;
+    private final int mWakeupStartSeconds;
+    private final int mWakeupFullBrightnessSeconds;
+
+    private final int mBrightness;
+    private final boolean mAutoBrightness;
+    private final int mAutoBrightnessAdj;
+    private final int mMinBrightnessAdj;
+
+    private final boolean mBattery;
+    private final boolean mNotifGmail;
+    private final boolean mNotifSms;
+    private final boolean mNotifMissedCalls;
+    private final boolean mOrientation;
+    private final boolean mSlideEffect;
+    private final boolean mPixelShift;
+
+    /**
+     * @return the current snapshot, built on the first call
+     */
+    public static DisplayConfig get(Context context) {
+        if (sCurrent == null) {
+            final Context appContext = context.getApplicationContext();
+            SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
+                    sCurrent = new DisplayConfig(appContext, pref);
+                    // A listener may write a preference, which dispatches from in here
+                    String outerKey = sChangedKey;
+                    sChangedKey = key;
+                    sListeners.dispatch(sDispatcher);
+                    sChangedKey = outerKey;
+                }
+            };
+            pref.registerOnSharedPreferenceChangeListener(sListener);
+            ColorTable.migrate(appContext, pref);
+            sCurrent = new DisplayConfig(appContext, pref);
+        }
+        return sCurrent;
+    }
+
+    /**
+     * Notified after a new snapshot was built, see {@link #get}.
+     */
+    public static void addListener(OnConfigChangeListener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(OnConfigChangeListener listener) {
+        sListeners.remove(listener);
+    }
+
+    private DisplayConfig(Context context, SharedPreferences pref) {
+        Resources res = context.getResources();
+
+        mClockStyle = pref.getString(ScreensaverSettingsActivity.KEY_CLOCK_STYLE,
+                res.getString(R.string.default_clock_style));
+        mClockSize = pref.getString(ScreensaverSettingsActivity.KEY_CLOCK_SIZE,
+                ScreensaverSettingsActivity.SIZE_DEFAULT);
+        mClockColor = resolveColor(context, pref, ScreensaverSettingsActivity.KEY_CLOCK_COLOR,
+                R.string.default_clock_color);
+        mLandscapeBigger = pref.getBoolean(ScreensaverSettingsActivity.KEY_LANDSCAPE_BIGGER,
+                ScreensaverSettingsActivity.KEY_LANDSCAPE_BIGGER_DEFAULT);
+
+        mDateColor = resolveColor(context, pref, ScreensaverSettingsActivity.KEY_DATE_COLOR,
+                R.string.default_date_color);
+        mDateSize = pref.getString(ScreensaverSettingsActivity.KEY_DATE_SIZE,
+                res.getString(R.string.default_date_clock_size));
+        mDateFont = pref.getString(ScreensaverSettingsActivity.KEY_DATE_FONT,
+                res.getString(R.string.default_date_clock_font));
+
+        mAlarmColor = resolveColor(context, pref, ScreensaverSettingsActivity.KEY_ALARM_COLOR,
+                R.string.default_alarm_color);
+        mAlarmSize = pref.getString(ScreensaverSettingsActivity.KEY_ALARM_SIZE,
+                res.getString(R.string.default_alarm_clock_size));
+        mAlarmFont = pref.getString(ScreensaverSettingsActivity.KEY_ALARM_FONT,
+                res.getString(R.string.default_alarm_clock_font));
+        mAlarmHideUntilSeconds =
+                pref.getInt(ScreensaverSettingsActivity.KEY_ALARM_HIDE_UNTIL_HOURS, 14) * 60 * 60;
+
+        mBackgroundImagePath = pref.getString(ScreensaverSettingsActivity.KEY_PATH_BACKGROUND_IMAGE, "");
+        mBackgroundAlpha = (float) pref.getInt(ScreensaverSettingsActivity.KEY_BACKGROUND_BRIGHTNESS,
+                ScreensaverSettingsActivity.BACKGROUND_BRIGHTNESS_DEFAULT) / 100;
+        mWakeupImagePath = pref.getString(ScreensaverSettingsActivity.KEY_PATH_WAKEUP_IMAGE, "");
+        mWakeupStartSeconds = pref.getInt(ScreensaverSettingsActivity.KEY_WAKEUP_START_TIME, 30) * 60;
+        mWakeupFullBrightnessSeconds =
+                pref.getInt(ScreensaverSettingsActivity.KEY_WAKEUP_FULL_BRIGHTNESS_TIME, 5) * 60;
+
+        mBrightness = pref.getInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS,
+                ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT);
+        mAutoBrightness = pref.getBoolean(ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO,
+                ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO_DEFAULT);
+        mAutoBrightnessAdj = pref.getInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO_ADJ,
+                ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO_ADJ_DEFAULT);
+        mMinBrightnessAdj = pref.getInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS_MIN_ADJ,
+                ScreensaverSettingsActivity.KEY_BRIGHTNESS_MIN_ADJ_DEFAULT);
+
+        mBattery = pref.getBoolean(ScreensaverSettingsActivity.KEY_BATTERY, true);
+        mNotifGmail = pref.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_GMAIL, true);
+        mNotifSms = pref.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_SMS, true);
+        mNotifMissedCalls = pref.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_MISSED_CALLS, true);
+        mOrientation = pref.getBoolean(ScreensaverSettingsActivity.KEY_ORIENTATION, false);
+        mSlideEffect = pref.getBoolean(ScreensaverSettingsActivity.KEY_SLIDE_EFFECT,
+                ScreensaverSettingsActivity.KEY_SLIDE_EFFECT_DEFAULT);
+        mPixelShift = pref.getBoolean(ScreensaverSettingsActivity.KEY_PIXEL_SHIFT,
+                ScreensaverSettingsActivity.KEY_PIXEL_SHIFT_DEFAULT);
+    }
+
+    private static int resolveColor(Context context, SharedPreferences pref, String key, int defaultValue) {
+        String defaultName = context.getResources().getString(defaultValue);
+        return ColorTable.getColor(context, pref.getString(key, defaultName), defaultName);
+    }
+
+    public String getClockStyle() { return mClockStyle; }
+
+    public String getClockSize() { return mClockSize; }
+
+    public int getClockColor() { return mClockColor; }
+
+    public boolean isLandscapeBigger() { return mLandscapeBigger; }
+
+    public int getDateColor() { return mDateColor; }
+
+    public String getDateSize() { return mDateSize; }
+
+    public String getDateFont() { return mDateFont; }
+
+    public int getAlarmColor() { return mAlarmColor; }
+
+    public String getAlarmSize() { return mAlarmSize; }
+
+    public String getAlarmFont() { return mAlarmFont; }
+
+    /** @return how long before the alarm it is shown, 0 to always show it */
+    public int getAlarmHideUntilSeconds() { return mAlarmHideUntilSeconds; }
+
+    public String getBackgroundImagePath() { return mBackgroundImagePath; }
+
+    public float getBackgroundAlpha() { return mBackgroundAlpha; }
+
+    public String getWakeupImagePath() { return mWakeupImagePath; }
+
+    public int getWakeupStartSeconds() { return mWakeupStartSeconds; }
+
+    public int getWakeupFullBrightnessSeconds() { return mWakeupFullBrightnessSeconds; }
+
+    public int getBrightness() { return mBrightness; }
+
+    public boolean isAutoBrightness() { return mAutoBrightness; }
+
+    public int getAutoBrightnessAdj() { return mAutoBrightnessAdj; }
+
+    public int getMinBrightnessAdj() { return mMinBrightnessAdj; }
+
+    public boolean isBatteryShown() { return mBattery; }
+
+    public boolean isNotifGmail() { return mNotifGmail; }
+
+    public boolean isNotifSms() { return mNotifSms; }
+
+    public boolean isNotifMissedCalls() { return mNotifMissedCalls; }
+
+    public boolean isOrientationLocked() { return mOrientation; }
+
+    public boolean isSlideEffect() { return mSlideEffect; }
+
+    /** @return true to shift the clock by a few pixels instead of sliding or fading it */
+    public boolean isPixelShift() { return mPixelShift; }
+}
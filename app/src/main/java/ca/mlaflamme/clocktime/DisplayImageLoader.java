@@ -0,0 +1,170 @@
+package ca.mlaflamme.clocktime;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads an image file into an ImageView, decoded once at the resolution of the display.
+ * <p>
+ * Decoding happens off the main thread, subsampled so that the image still covers the display
+ * (centerCrop) without keeping the full camera resolution in memory. The bitmap is kept for as
+ * long as the path, the modification time of the file and the display size stay the same, so
+ * showing it again only checks the file and does not touch the drawable. One loader per image
+ * slot, used from the main thread.
+ */
+public class DisplayImageLoader {
+    private final static String TAG = Utils.class.getName();
+
+    private static ExecutorService sDecoder;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Bitmap.Config mConfig;
+
+    private String mKey;
+    private Bitmap mBitmap;
+    private String mPendingKey;
+    private WeakReference<ImageView> mTarget;
+
+    /**
+     * @param config RGB_565 for opaque photos, half the memory of ARGB_8888
+     */
+    public DisplayImageLoader(Bitmap.Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * Shows the image in the view, decoding it first if the file changed since the last call.
+     *
+     * @param path the image file, empty to clear the view and drop the cached bitmap
+     */
+    public void load(ImageView view, String path) {
+        if (path == null || path.isEmpty()) {
+            mKey = mPendingKey = null;
+            mBitmap = null;
+            mTarget = null;
+            view.setImageDrawable(null);
+            return;
+        }
+
+        DisplayMetrics metrics = view.getResources().getDisplayMetrics();
+        final int targetWidth = metrics.widthPixels;
+        final int targetHeight = metrics.heightPixels;
+        final File file = new File(path);
+        final String key = path + '@' + file.lastModified() + '@' + targetWidth + 'x' + targetHeight;
+
+        mTarget = new WeakReference<>(view);
+        if (key.equals(mKey)) {
+            show(view);
+            return;
+        }
+        if (key.equals(mPendingKey)) {
+            return;
+        }
+        mPendingKey = key;
+
+        getDecoder().execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap decoded = null;
+                try {
+                    decoded = decode(file, targetWidth, targetHeight, mConfig);
+                } catch (Exception e) {
+                    Log.e("Cannot decode image " + file, e);
+                }
+                final Bitmap bitmap = decoded;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDecoded(key, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the bitmap currently shown, null while none was decoded
+     */
+    public Bitmap getBitmap() { return mBitmap; }
+
+    private void onDecoded(String key, Bitmap bitmap) {
+        // A newer request replaced this one meanwhile
+        if (!key.equals(mPendingKey)) {
+            return;
+        }
+        mPendingKey = null;
+        if (bitmap == null) {
+            return;
+        }
+
+        // The previous bitmap may still be drawn by another view, it is left to the garbage
+        // collector instead of being recycled
+        mKey = key;
+        mBitmap = bitmap;
+        ImageView view = mTarget != null ? mTarget.get() : null;
+        if (view != null) {
+            show(view);
+        }
+    }
+
+    private void show(ImageView view) {
+        Drawable drawable = view.getDrawable();
+        if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() == mBitmap) {
+            return;
+        }
+        view.setImageDrawable(new BitmapDrawable(view.getResources(), mBitmap));
+    }
+
+    /**
+     * @return the single thread decoding images, shared with {@link ImageImporter}
+     */
+    static synchronized ExecutorService getDecoder() {
+        if (sDecoder == null) {
+            sDecoder = Executors.newSingleThreadExecutor();
+        }
+        return sDecoder;
+    }
+
+    /**
+     * Runs on the decoder thread.
+     *
+     * @return the image subsampled by the largest power of two still covering the target, null
+     * if the file cannot be decoded
+     */
+    static Bitmap decode(File file, int targetWidth, int targetHeight, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w("Cannot decode image " + file);
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth
+                && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (OutOfMemoryError e) {
+            Log.w("Not enough memory to decode image " + file);
+            return null;
+        }
+    }
+}
@@ -17,16 +17,59 @@
 package ca.mlaflamme.clocktime;
 
 import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.text.method.TransformationMethod;
 import android.util.AttributeSet;
+import android.view.Gravity;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+
 /**
  * Displays text with no padding at the top.
+ * <p>
+ * The text is trimmed to the glyphs it displays, from the metrics of its typeface: the space
+ * above the cap height and below the lowest digit is removed with negative paddings. The view owns
+ * its vertical padding, {@link #setPadding} only keeps the horizontal values it is given.
  */
 public class FitRobotoTextView extends TextView {
     private final static String TAG = Utils.class.getName();
-    private static final float NORMAL_FONT_PADDING_TOP_RATIO = 0.2f;
-    private static final float NORMAL_FONT_PADDING_BOTTOM_RATIO = 0.23f;
+    /** Capitals and digits, the tallest glyphs of the time and the AM/PM */
+    private static final String TRIM_REFERENCE = "H0123456789";
+
+    /** A screen only uses a few typefaces and sizes, older ones come from changed settings */
+    private static final int MAX_TRIMS = 16;
+
+    /** Trims by typeface and size, most recently used first */
+    private static final ArrayList<Trim> sTrims = new ArrayList<>(MAX_TRIMS + 1);
+    private static final Paint sTrimPaint = new Paint();
+    private static final Rect sTrimBounds = new Rect();
+
+    /**
+     * Space to remove above and below the text, in px, for a typeface and a text size.
+     */
+    static final class Trim {
+        final Typeface typeface;
+        final float textSize;
+        final int top, bottom;
+
+        private Trim(Typeface typeface, float textSize, int top, int bottom) {
+            this.typeface = typeface;
+            this.textSize = textSize;
+            this.top = top;
+            this.bottom = bottom;
+        }
+    }
+
+    private Trim mTrim;
+    private String[] mReservedTexts;
+    private boolean mReservedAlignRight;
+    private Typeface mReservedTypeface;
+    private float mReservedTextSize;
+    private int mReservedPadding;
 
     public FitRobotoTextView(Context context) {
         this(context, null);
@@ -44,32 +87,149 @@ public class FitRobotoTextView extends TextView {
         updatePadding();
     }
 
-    private void updatePadding() {
-        float paddingTopRatio, paddingBottomRatio;
-        int paddingLeft, paddingRight, paddingTop, paddingBottom;
+    /**
+     * @return the trim of the typeface at this size, measured on the first request only. Must be
+     * called from the main thread.
+     */
+    static Trim obtainTrim(Typeface typeface, float textSize) {
+        if (typeface == null) {
+            typeface = Typeface.DEFAULT;
+        }
+        for (int i = 0; i < sTrims.size(); i++) {
+            Trim trim = sTrims.get(i);
+            if (trim.typeface == typeface && trim.textSize == textSize) {
+                if (i > 0) {
+                    sTrims.remove(i);
+                    sTrims.add(0, trim);
+                }
+                return trim;
+            }
+        }
 
-        paddingTopRatio = NORMAL_FONT_PADDING_TOP_RATIO;
-        paddingBottomRatio = NORMAL_FONT_PADDING_BOTTOM_RATIO;
+        sTrimPaint.setTypeface(typeface);
+        sTrimPaint.setTextSize(textSize);
+        Paint.FontMetrics metrics = sTrimPaint.getFontMetrics();
+        sTrimPaint.getTextBounds(TRIM_REFERENCE, 0, TRIM_REFERENCE.length(), sTrimBounds);
 
-        paddingLeft = getPaddingLeft();
-        paddingRight = getPaddingRight();
-        paddingTop = (int) (-paddingTopRatio * getTextSize());
-        paddingBottom = (int) (-paddingBottomRatio * getTextSize());
+        // Without the font padding the text spans from the ascent to the descent; the bounds are
+        // relative to the baseline, negative above it
+        int top = (int) (-metrics.ascent + sTrimBounds.top);
+        int bottom = (int) (metrics.descent - sTrimBounds.bottom);
+        Trim trim = new Trim(typeface, textSize, Math.max(0, top), Math.max(0, bottom));
+        sTrims.add(0, trim);
+        if (sTrims.size() > MAX_TRIMS) {
+            // Views holding it keep their copy in mTrim
+            sTrims.remove(MAX_TRIMS);
+        }
+        return trim;
+    }
 
+    /**
+     * Only applied when the typeface or the size changed the trim, setPadding requests a layout.
+     */
+    private void updatePadding() {
         // no need to scale by display density because getTextSize() already returns the font
         // height in px
-        setPadding(paddingLeft, paddingTop, paddingRight, paddingBottom);
+        Trim trim = obtainTrim(getTypeface(), getTextSize());
+        if (trim != mTrim) {
+            mTrim = trim;
+            setPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
+        }
+    }
+
+    /**
+     * Fixed-advance mode: the width is fixed once to hold any of the given texts, each character
+     * position reserving the widest glyph found there. Replacing the text with one of them then
+     * never changes the measured size, the text is only redrawn, without a layout pass.
+     * <p>
+     * Measured again only when the typeface, the text size or the horizontal padding changes.
+     *
+     * @param texts every text that may be displayed, null to go back to wrapping the text
+     * @param alignRight positions counted from the end of the texts, e.g. for the hours
+     */
+    public void setReservedTexts(String[] texts, boolean alignRight) {
+        if (texts == mReservedTexts && alignRight == mReservedAlignRight) {
+            return;
+        }
+        mReservedTexts = texts;
+        mReservedAlignRight = alignRight;
+        mReservedTypeface = null;
+        mReservedTextSize = 0;
+
+        if (texts == null) {
+            setMinWidth(0);
+            setMaxWidth(Integer.MAX_VALUE);
+            return;
+        }
+        int horizontal = alignRight ? Gravity.RIGHT : Gravity.LEFT;
+        setGravity(horizontal | (getGravity() & Gravity.VERTICAL_GRAVITY_MASK));
+        updateReservedWidth();
+    }
+
+    private void updateReservedWidth() {
+        if (mReservedTexts == null) {
+            return;
+        }
+        TextPaint paint = getPaint();
+        Typeface typeface = paint.getTypeface();
+        float textSize = paint.getTextSize();
+        int padding = getCompoundPaddingLeft() + getCompoundPaddingRight();
+        if (typeface == mReservedTypeface && textSize == mReservedTextSize
+                && padding == mReservedPadding) {
+            return;
+        }
+        mReservedTypeface = typeface;
+        mReservedTextSize = textSize;
+        mReservedPadding = padding;
+
+        // Measured as displayed, e.g. upper-cased by textAllCaps
+        TransformationMethod transformation = getTransformationMethod();
+        CharSequence[] texts = new CharSequence[mReservedTexts.length];
+        int length = 0;
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = transformation != null
+                    ? transformation.getTransformation(mReservedTexts[i], this) : mReservedTexts[i];
+            length = Math.max(length, texts[i].length());
+        }
+
+        float[] cells = new float[length];
+        for (CharSequence text : texts) {
+            for (int i = 0; i < text.length(); i++) {
+                int cell = mReservedAlignRight ? length - text.length() + i : i;
+                cells[cell] = Math.max(cells[cell], paint.measureText(text, i, i + 1));
+            }
+        }
+        float width = 0;
+        for (float cell : cells) width += cell;
+
+        // Same minimum and maximum, TextView then swaps the text layout without a relayout.
+        // One extra pixel absorbs the kerning between the characters measured separately.
+        setWidth((int) Math.ceil(width) + 1 + padding);
     }
 
     @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        super.onLayout(changed, left, top, right, bottom);
+    public void setTypeface(Typeface tf) {
+        super.setTypeface(tf);
         updatePadding();
+        updateReservedWidth();
     }
 
     @Override
-    protected void onAttachedToWindow() {
+    public void setTextSize(int unit, float size) {
+        super.setTextSize(unit, size);
         updatePadding();
-        super.onAttachedToWindow();
+        updateReservedWidth();
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        // Utils.resizeContent scales the padding after the text size, the trim of the new size
+        // must not be scaled again. Null while the TextView constructor runs.
+        if (mTrim != null) {
+            top = -mTrim.top;
+            bottom = -mTrim.bottom;
+        }
+        super.setPadding(left, top, right, bottom);
+        updateReservedWidth();
     }
 }
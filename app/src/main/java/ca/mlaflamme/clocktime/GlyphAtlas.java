@@ -0,0 +1,167 @@
+package ca.mlaflamme.clocktime;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.Arrays;
+
+/**
+ * A set of strings (digits, separator, AM/PM) rasterized once for a typeface and a size into
+ * alpha bitmaps, then drawn as bitmap blits.
+ * <p>
+ * At the largest clock sizes the glyphs exceed the hardware font cache and would otherwise be
+ * rendered as paths on every redraw. The atlas only stores coverage, the color comes from the
+ * paint used to draw it, so changing the color does not require a new atlas. The entries are
+ * split in as many pages as needed for each bitmap to be uploadable as a texture.
+ */
+public class GlyphAtlas {
+    private final static String TAG = Utils.class.getName();
+    private static final int PADDING = 2;
+    // Lowest GL_MAX_TEXTURE_SIZE of the supported GPUs, the canvas only tells its own limit
+    // while drawing
+    private static final int MAX_PAGE_SIZE = 2048;
+
+    private final Typeface mTypeface;
+    private final float mTextSize;
+    private final String[] mEntries;
+    private final Rect[] mSources;
+    private final int[] mPages;
+    private final int[] mOffsetX, mOffsetY;
+    private final float[] mAdvances;
+    private final float mAscent, mDescent;
+    private Bitmap[] mBitmaps;
+
+    /**
+     * @param entries the strings to rasterize, each one is drawn as a whole
+     */
+    public GlyphAtlas(Typeface typeface, float textSize, String[] entries) {
+        mTypeface = typeface;
+        mTextSize = textSize;
+        mEntries = entries;
+        mSources = new Rect[entries.length];
+        mPages = new int[entries.length];
+        mOffsetX = new int[entries.length];
+        mOffsetY = new int[entries.length];
+        mAdvances = new float[entries.length];
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(typeface);
+        paint.setTextSize(textSize);
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        mAscent = metrics.ascent;
+        mDescent = metrics.descent;
+
+        // Tight bounds of each entry, laid out on roughly square grids, each one under the
+        // maximum texture size
+        Rect[] bounds = new Rect[entries.length];
+        int cellWidth = 1, cellHeight = 1;
+        for (int i = 0; i < entries.length; i++) {
+            bounds[i] = new Rect();
+            paint.getTextBounds(entries[i], 0, entries[i].length(), bounds[i]);
+            mAdvances[i] = paint.measureText(entries[i]);
+            cellWidth = Math.max(cellWidth, bounds[i].width() + 2 * PADDING);
+            cellHeight = Math.max(cellHeight, bounds[i].height() + 2 * PADDING);
+        }
+        if (cellWidth > MAX_PAGE_SIZE || cellHeight > MAX_PAGE_SIZE) {
+            Log.w("Glyphs of " + textSize + "px do not fit in a texture");
+            return;
+        }
+        int columns = Math.min(MAX_PAGE_SIZE / cellWidth,
+                Math.max(1, (int) Math.ceil(Math.sqrt(entries.length))));
+        int perPage = columns * Math.min(MAX_PAGE_SIZE / cellHeight,
+                (entries.length + columns - 1) / columns);
+        perPage = Math.max(1, perPage);
+
+        mBitmaps = new Bitmap[(entries.length + perPage - 1) / perPage];
+        Canvas canvas = new Canvas();
+        for (int i = 0; i < entries.length; i++) {
+            int page = i / perPage;
+            int slot = i % perPage;
+            if (slot == 0) {
+                int count = Math.min(perPage, entries.length - i);
+                int rows = (count + columns - 1) / columns;
+                mBitmaps[page] = Bitmap.createBitmap(Math.min(count, columns) * cellWidth,
+                        Math.max(1, rows) * cellHeight, Bitmap.Config.ALPHA_8);
+                canvas.setBitmap(mBitmaps[page]);
+            }
+            int left = (slot % columns) * cellWidth;
+            int top = (slot / columns) * cellHeight;
+            mPages[i] = page;
+            mSources[i] = new Rect(left, top,
+                    left + bounds[i].width() + 2 * PADDING, top + bounds[i].height() + 2 * PADDING);
+            mOffsetX[i] = bounds[i].left - PADDING;
+            mOffsetY[i] = bounds[i].top - PADDING;
+            canvas.drawText(entries[i], left - mOffsetX[i], top - mOffsetY[i], paint);
+        }
+        canvas.setBitmap(null);
+    }
+
+    /**
+     * @return false when a single entry is larger than a texture, nothing can be drawn then
+     */
+    public boolean isDrawable() {
+        return mBitmaps != null;
+    }
+
+    public boolean matches(Typeface typeface, float textSize, String[] entries) {
+        return mBitmaps != null && mTypeface == typeface && mTextSize == textSize
+                && Arrays.equals(mEntries, entries);
+    }
+
+    public int indexOf(String entry) {
+        for (int i = 0; i < mEntries.length; i++) {
+            if (mEntries[i].equals(entry)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(char c) {
+        for (int i = 0; i < mEntries.length; i++) {
+            if (mEntries[i].length() == 1 && mEntries[i].charAt(0) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public float getAdvance(int index) { return mAdvances[index]; }
+
+    /** @return the font ascent, negative like {@link Paint.FontMetrics#ascent} */
+    public float getAscent() { return mAscent; }
+
+    public float getDescent() { return mDescent; }
+
+    public Typeface getTypeface() { return mTypeface; }
+
+    public float getTextSize() { return mTextSize; }
+
+    /**
+     * Blits an entry with its pen position at x and its baseline at y.
+     *
+     * @param dst scratch rectangle, to keep the draw pass allocation-free
+     */
+    public void draw(Canvas canvas, int index, float x, float y, Paint paint, Rect dst) {
+        if (index < 0 || mBitmaps == null) {
+            return;
+        }
+        Rect src = mSources[index];
+        int left = Math.round(x) + mOffsetX[index];
+        int top = Math.round(y) + mOffsetY[index];
+        dst.set(left, top, left + src.width(), top + src.height());
+        canvas.drawBitmap(mBitmaps[mPages[index]], src, dst, paint);
+    }
+
+    public void recycle() {
+        if (mBitmaps != null) {
+            for (Bitmap bitmap : mBitmaps) {
+                bitmap.recycle();
+            }
+            mBitmaps = null;
+        }
+    }
+}
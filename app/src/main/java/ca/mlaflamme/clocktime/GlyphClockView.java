@@ -0,0 +1,209 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * Draws the digital time from glyph atlases, for the very large clock sizes.
+ * <p>
+ * Every digit position has a fixed width, the widest glyph it can hold, so a new time only
+ * invalidates the view and never requests a layout. The styles (typefaces, sizes, color) are
+ * copied from the text views of {@link DigitalClock} which stay hidden meanwhile.
+ */
+public class GlyphClockView extends View {
+    private final static String TAG = Utils.class.getName();
+
+    private GlyphAtlas mHoursAtlas, mMinutesAtlas, mAmPmAtlas;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mDst = new Rect();
+
+    private float[] mHoursCells = new float[0];
+    private float[] mMinutesCells = new float[0];
+    private float mAmPmPadding;
+    private float mAmPmWidth;
+    private boolean mShowAmPm;
+    private float mBaseline;
+    private int mWidth, mHeight;
+
+    private String mHours = "", mMinutes = "";
+    private int mAmPmIndex = -1;
+
+    public GlyphClockView(Context context) {
+        this(context, null);
+    }
+
+    public GlyphClockView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Copies the styles of the text views and rebuilds the atlases whose typeface or size
+     * changed. Only requests a layout when the resulting size differs.
+     *
+     * @return false when the glyphs are too big for the atlases, the text views must be used
+     */
+    public boolean setStyle(TextView hours, TextView minutes, TextView ampm, TimeFormatter formatter) {
+        String[] glyphs = formatter.getGlyphs();
+        mHoursAtlas = obtainAtlas(mHoursAtlas, hours, glyphs);
+        mMinutesAtlas = obtainAtlas(mMinutesAtlas, minutes, glyphs);
+
+        Locale locale = Locale.getDefault();
+        String[] ampmEntries = {
+                formatter.getAmPm(0).toUpperCase(locale), formatter.getAmPm(12).toUpperCase(locale)
+        };
+        mAmPmAtlas = obtainAtlas(mAmPmAtlas, ampm, ampmEntries);
+
+        if (!mHoursAtlas.isDrawable() || !mMinutesAtlas.isDrawable() || !mAmPmAtlas.isDrawable()) {
+            release();
+            return false;
+        }
+
+        mPaint.setColor(hours.getCurrentTextColor());
+
+        mHoursCells = getCells(mHoursAtlas, formatter.getHoursTable(), true);
+        mMinutesCells = getCells(mMinutesAtlas, formatter.getMinutesTable(), false);
+
+        mShowAmPm = !formatter.is24HourMode();
+        mAmPmPadding = ampm.getPaddingLeft();
+        mAmPmWidth = Math.max(mAmPmAtlas.getAdvance(0), mAmPmAtlas.getAdvance(1));
+
+        // Same vertical trimming as the FitRobotoTextView it replaces, aligned on the baseline
+        float above = 0, below = 0;
+        GlyphAtlas[] atlases = mShowAmPm
+                ? new GlyphAtlas[] { mHoursAtlas, mMinutesAtlas, mAmPmAtlas }
+                : new GlyphAtlas[] { mHoursAtlas, mMinutesAtlas };
+        for (GlyphAtlas atlas : atlases) {
+            FitRobotoTextView.Trim trim =
+                    FitRobotoTextView.obtainTrim(atlas.getTypeface(), atlas.getTextSize());
+            above = Math.max(above, -atlas.getAscent() - trim.top);
+            below = Math.max(below, atlas.getDescent() - trim.bottom);
+        }
+        mBaseline = above;
+
+        int width = (int) Math.ceil(sum(mHoursCells) + sum(mMinutesCells)
+                + (mShowAmPm ? mAmPmPadding + mAmPmWidth : 0));
+        int height = (int) Math.ceil(above + below);
+        if (width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            requestLayout();
+        }
+        invalidate();
+        return true;
+    }
+
+    /**
+     * Sets the time to draw, only invalidating the view.
+     *
+     * @param hourOfDay used to pick the AM/PM string
+     */
+    public void setTime(String hours, String minutes, int hourOfDay) {
+        mHours = hours;
+        mMinutes = minutes;
+        mAmPmIndex = hourOfDay < 12 ? 0 : 1;
+        invalidate();
+    }
+
+    public void release() {
+        if (mHoursAtlas != null) mHoursAtlas.recycle();
+        if (mMinutesAtlas != null) mMinutesAtlas.recycle();
+        if (mAmPmAtlas != null) mAmPmAtlas.recycle();
+        mHoursAtlas = mMinutesAtlas = mAmPmAtlas = null;
+    }
+
+    @Override
+    public int getBaseline() {
+        return (int) mBaseline;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(resolveSize(mWidth, widthMeasureSpec),
+                resolveSize(mHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mHoursAtlas == null) {
+            return;
+        }
+
+        // Hours are right aligned against the minutes, like "9:05" next to "12:05"
+        float x = sum(mHoursCells);
+        for (int i = mHours.length() - 1, cell = mHoursCells.length - 1; i >= 0 && cell >= 0; i--, cell--) {
+            x -= mHoursCells[cell];
+            drawGlyph(canvas, mHoursAtlas, mHours.charAt(i), x, mHoursCells[cell]);
+        }
+
+        x = sum(mHoursCells);
+        for (int i = 0; i < mMinutes.length() && i < mMinutesCells.length; i++) {
+            drawGlyph(canvas, mMinutesAtlas, mMinutes.charAt(i), x, mMinutesCells[i]);
+            x += mMinutesCells[i];
+        }
+
+        if (mShowAmPm && mAmPmIndex >= 0) {
+            mAmPmAtlas.draw(canvas, mAmPmIndex, x + mAmPmPadding, mBaseline, mPaint, mDst);
+        }
+    }
+
+    private void drawGlyph(Canvas canvas, GlyphAtlas atlas, char c, float cellLeft, float cellWidth) {
+        int index = atlas.indexOf(c);
+        if (index < 0) {
+            return;
+        }
+        float x = cellLeft + (cellWidth - atlas.getAdvance(index)) / 2;
+        atlas.draw(canvas, index, x, mBaseline, mPaint, mDst);
+    }
+
+    private static GlyphAtlas obtainAtlas(GlyphAtlas atlas, TextView style, String[] entries) {
+        Typeface typeface = getTypeface(style);
+        if (atlas != null && atlas.matches(typeface, style.getTextSize(), entries)) {
+            return atlas;
+        }
+        if (atlas != null) {
+            atlas.recycle();
+        }
+        return new GlyphAtlas(typeface, style.getTextSize(), entries);
+    }
+
+    private static Typeface getTypeface(TextView style) {
+        return style.getTypeface() != null ? style.getTypeface() : Typeface.DEFAULT;
+    }
+
+    /**
+     * Width of every character position: the widest glyph that can be found there.
+     *
+     * @param alignRight positions counted from the end of the strings
+     */
+    private static float[] getCells(GlyphAtlas atlas, String[] table, boolean alignRight) {
+        int length = 0;
+        for (String s : table) length = Math.max(length, s.length());
+
+        float[] cells = new float[length];
+        for (String s : table) {
+            for (int i = 0; i < s.length(); i++) {
+                int cell = alignRight ? length - s.length() + i : i;
+                int index = atlas.indexOf(s.charAt(i));
+                if (index >= 0) {
+                    cells[cell] = Math.max(cells[cell], atlas.getAdvance(index));
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static float sum(float[] values) {
+        float sum = 0;
+        for (float value : values) sum += value;
+        return sum;
+    }
+}
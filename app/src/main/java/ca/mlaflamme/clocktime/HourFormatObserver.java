@@ -0,0 +1,102 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+/**
+ * Process-wide observer of the 12/24-hour system setting.
+ * <p>
+ * Only the time_12_24 URI is observed, not every write to Settings.System, and bursts of changes
+ * are coalesced before the mode is read again and the clock views are notified. The observer is
+ * only registered while at least one listener is attached.
+ */
+public class HourFormatObserver {
+    private final static String TAG = Utils.class.getName();
+    private static final long DEBOUNCE_DELAY = 500;
+
+    public interface OnHourFormatChangeListener {
+        void onHourFormatChanged(boolean is24HourMode);
+    }
+
+    private static HourFormatObserver sInstance;
+
+    private final Context mAppContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ListenerList<OnHourFormatChangeListener> mListeners = new ListenerList<>();
+    private boolean m24HourMode;
+    private boolean mRegistered;
+
+    private final ContentObserver mObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mHandler.removeCallbacks(mNotify);
+            mHandler.postDelayed(mNotify, DEBOUNCE_DELAY);
+        }
+    };
+
+    private final ListenerList.Dispatcher<OnHourFormatChangeListener> mDispatcher =
+            new ListenerList.Dispatcher<OnHourFormatChangeListener>() {
+        @Override
+        public void dispatch(OnHourFormatChangeListener listener, int mask) {
+            listener.onHourFormatChanged(m24HourMode);
+        }
+    };
+
+    private final Runnable mNotify = new Runnable() {
+        @Override
+        public void run() {
+            boolean is24HourMode = Alarms.get24HourMode(mAppContext);
+            if (is24HourMode == m24HourMode) {
+                return;
+            }
+            m24HourMode = is24HourMode;
+            mListeners.dispatch(mDispatcher);
+        }
+    };
+
+    private HourFormatObserver(Context context) {
+        mAppContext = context.getApplicationContext();
+        m24HourMode = Alarms.get24HourMode(mAppContext);
+    }
+
+    public static HourFormatObserver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new HourFormatObserver(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the mode read on the last change, without querying the settings provider
+     */
+    public boolean is24HourMode() { return m24HourMode; }
+
+    public void addListener(OnHourFormatChangeListener listener) {
+        if (!mListeners.add(listener)) {
+            return;
+        }
+
+        if (!mRegistered) {
+            mRegistered = true;
+            Uri uri = Settings.System.getUriFor(Settings.System.TIME_12_24);
+            mAppContext.getContentResolver().registerContentObserver(uri, false, mObserver);
+
+            // The setting or the locale may have changed while nobody was observing
+            m24HourMode = Alarms.get24HourMode(mAppContext);
+        }
+    }
+
+    public void removeListener(OnHourFormatChangeListener listener) {
+        mListeners.remove(listener);
+
+        if (mListeners.isEmpty() && mRegistered) {
+            mRegistered = false;
+            mAppContext.getContentResolver().unregisterContentObserver(mObserver);
+            mHandler.removeCallbacks(mNotify);
+        }
+    }
+}
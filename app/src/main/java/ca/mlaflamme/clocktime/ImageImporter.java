@@ -0,0 +1,171 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.WindowManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies a picked image into the private files of the app, transcoded once to the display size.
+ * <p>
+ * The dream then decodes a small local JPEG instead of the full camera photo from shared storage,
+ * and keeps working if the original is moved or its storage is not mounted.
+ */
+public class ImageImporter {
+    private final static String TAG = Utils.class.getName();
+    private static final String IMAGES_DIR = "images";
+    private static final int JPEG_QUALITY = 90;
+
+    public interface OnImportListener {
+        /**
+         * Called on the main thread.
+         *
+         * @param path the imported file, null if the image could not be read
+         */
+        void onImported(String path);
+    }
+
+    private ImageImporter() {
+    }
+
+    /**
+     * Imports the image on the decoder thread. Each import gets a new file, so the preference
+     * pointing at it changes and its listeners reload the image.
+     *
+     * @param name prefix of the file name of the import, one per image slot
+     */
+    public static void importImage(Context context, final Uri source, final String name,
+                                   final OnImportListener listener) {
+        final Context appContext = context.getApplicationContext();
+        final Point display = getLargestDisplaySize(appContext);
+        final Handler handler = new Handler(Looper.getMainLooper());
+
+        DisplayImageLoader.getDecoder().execute(new Runnable() {
+            @Override
+            public void run() {
+                String path = null;
+                try {
+                    path = transcode(appContext, source, name, display.x, display.y);
+                } catch (Exception e) {
+                    Log.e("Cannot import image " + source, e);
+                }
+                final String imported = path;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onImported(imported);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the real size of the display, long side first
+     */
+    private static Point getLargestDisplaySize(Context context) {
+        Point size = new Point();
+        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        wm.getDefaultDisplay().getRealSize(size);
+        return new Point(Math.max(size.x, size.y), Math.min(size.x, size.y));
+    }
+
+    private static String transcode(Context context, Uri source, String name,
+                                    int longSide, int shortSide) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(context, source, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Covers the display in the orientation of the image, like centerCrop will show it
+        boolean landscape = options.outWidth >= options.outHeight;
+        int targetWidth = landscape ? longSide : shortSide;
+        int targetHeight = landscape ? shortSide : longSide;
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth
+                && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = decode(context, source, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        // Exact scale down of the remaining factor, never up
+        float scale = Math.max((float) targetWidth / bitmap.getWidth(),
+                (float) targetHeight / bitmap.getHeight());
+        if (scale < 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+
+        // Written next to the target then renamed, a dream reading the previous import never
+        // sees a partial file
+        File dir = new File(context.getFilesDir(), IMAGES_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File target = new File(dir, name + "-" + System.currentTimeMillis() + ".jpg");
+        File temp = new File(dir, name + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot write " + target);
+        }
+        return target.getAbsolutePath();
+    }
+
+    /**
+     * Deletes a previous import once nothing points at it anymore. Paths outside the imports,
+     * like an original image used as a fallback, are left alone.
+     */
+    public static void deleteImport(Context context, String path) {
+        if (path == null) {
+            return;
+        }
+        File file = new File(path);
+        File dir = new File(context.getFilesDir(), IMAGES_DIR);
+        if (dir.equals(file.getParentFile()) && !file.delete()) {
+            Log.w("Cannot delete previous import " + path);
+        }
+    }
+
+    private static Bitmap decode(Context context, Uri source, BitmapFactory.Options options)
+            throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(source);
+        if (in == null) {
+            return null;
+        }
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.drawable.Drawable;
+import android.text.format.DateUtils;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.animation.LinearInterpolator;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+/**
+ * Analog clock where each hand is its own hardware layered view moved with setRotation, so a
+ * hand movement only updates a render node property instead of re-recording the dial.
+ * <p>
+ * Wraps an {@link AnalogClock} which keeps drawing the dial and the jewel. When the window is not
+ * hardware accelerated the wrapped clock draws its hands itself, as before.
+ */
+public class LayeredAnalogClock extends FrameLayout implements ClockTicker.OnTickListener {
+    private final static String TAG = Utils.class.getName();
+    private static final long MINUTE_MILLIS = 60000;
+
+    private final boolean mSweepSecondHand;
+    private AnalogClock mDialClock;
+    private ImageView mHourHand, mMinuteHand, mSecondHand;
+    private final LinearInterpolator mSweepInterpolator = new LinearInterpolator();
+    private boolean mLayered;
+    private boolean mAttached;
+
+    public LayeredAnalogClock(Context context) {
+        this(context, null);
+    }
+
+    public LayeredAnalogClock(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public LayeredAnalogClock(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AnalogClock);
+        mSweepSecondHand = a.getBoolean(R.styleable.AnalogClock_sweepSecondHand, false);
+        a.recycle();
+    }
+
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+
+        for (int i = 0; i < getChildCount(); i++) {
+            if (getChildAt(i) instanceof AnalogClock) {
+                mDialClock = (AnalogClock) getChildAt(i);
+            }
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        // Runs before the children are attached, so the wrapped clock never subscribes for
+        // nothing when the hands are layered
+        super.onAttachedToWindow();
+
+        if (mAttached) return;
+        mAttached = true;
+
+        if (mDialClock == null || !isHardwareAccelerated()) {
+            setLayered(false);
+            return;
+        }
+        setLayered(true);
+
+        ClockTicker ticker = ClockTicker.getInstance(getContext());
+        ticker.addListener(this, getTickGranularity());
+        updateHands(ticker);
+        updateContentDescription(ticker);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        if (!mAttached) return;
+        mAttached = false;
+
+        if (mLayered) {
+            ClockTicker.getInstance(getContext()).removeListener(this);
+            stopSweep();
+        }
+    }
+
+    private void setLayered(boolean layered) {
+        mLayered = layered;
+        if (mDialClock != null) {
+            mDialClock.setHandsEnabled(!layered);
+        }
+
+        if (layered && mHourHand == null) {
+            mHourHand = addHand(mDialClock.getHourHand());
+            mMinuteHand = addHand(mDialClock.getMinuteHand());
+            mSecondHand = addHand(mDialClock.getSecondHand());
+        }
+
+        int visibility = layered ? View.VISIBLE : View.GONE;
+        if (mHourHand != null) {
+            mHourHand.setVisibility(visibility);
+            mMinuteHand.setVisibility(visibility);
+            mSecondHand.setVisibility(visibility);
+        }
+    }
+
+    private ImageView addHand(Drawable source) {
+        ImageView hand = new ImageView(getContext());
+        // A copy, the wrapped clock keeps its own for when the hands are not layered
+        Drawable.ConstantState state = source.getConstantState();
+        hand.setImageDrawable(state != null ? state.newDrawable(getResources()) : source);
+        // Same sizing as the dial: scaled down only, centered, so the rotation pivot is the
+        // center of the dial
+        hand.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
+        hand.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        hand.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO);
+        addView(hand, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        return hand;
+    }
+
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        updateHands(ticker);
+        if ((boundaries & ClockTicker.MINUTE) != 0) {
+            updateContentDescription(ticker);
+        }
+    }
+
+    private void updateHands(ClockTicker ticker) {
+        TimeModel time = ticker.getTime();
+
+        mHourHand.setRotation(time.getHourAngle());
+        mMinuteHand.setRotation(time.getMinuteAngle());
+
+        if (!mSweepSecondHand) {
+            mSecondHand.setRotation(time.getSecondAngle());
+        } else {
+            startSweep(time);
+        }
+    }
+
+    /**
+     * Turns the second hand linearly to the end of the current minute, re-armed on each minute
+     * tick. The animator still runs a UI thread frame per vsync for the whole minute, but each
+     * frame only sets the rotation of the hand's layer, nothing is measured or re-recorded.
+     */
+    private void startSweep(TimeModel time) {
+        long elapsed = time.getSecond() * 1000L + time.getMillis();
+        mSecondHand.animate().cancel();
+        mSecondHand.setRotation(time.getSweepSecondAngle());
+        mSecondHand.animate()
+                .rotation(360f)
+                .setDuration(Math.max(0, MINUTE_MILLIS - elapsed))
+                .setInterpolator(mSweepInterpolator);
+    }
+
+    private void stopSweep() {
+        if (mSecondHand != null) {
+            mSecondHand.animate().cancel();
+        }
+    }
+
+    private int getTickGranularity() {
+        return mSweepSecondHand ? ClockTicker.MINUTE : ClockTicker.SECOND;
+    }
+
+    private void updateContentDescription(ClockTicker ticker) {
+        final int flags = DateUtils.FORMAT_SHOW_TIME;
+        setContentDescription(DateUtils.formatDateTime(getContext(), ticker.getTimeMillis(), flags));
+    }
+}
@@ -0,0 +1,93 @@
+package ca.mlaflamme.clocktime;
+
+import java.util.ArrayList;
+
+/**
+ * Subscribers of a process-wide source, each one with an optional mask of the events it wants.
+ * <p>
+ * The listeners are notified backward, so a listener can unsubscribe itself, or another one,
+ * while being notified. Not thread-safe, the sources using it notify from the main thread.
+ */
+public class ListenerList<T> {
+    private final static String TAG = Utils.class.getName();
+
+    /** Mask of a listener interested in every event. */
+    public static final int ALL = ~0;
+
+    public interface Dispatcher<T> {
+        /**
+         * @param mask the events being dispatched, as given to {@link ListenerList#dispatch}
+         */
+        void dispatch(T listener, int mask);
+    }
+
+    private final ArrayList<T> mListeners = new ArrayList<>();
+    private final ArrayList<Integer> mMasks = new ArrayList<>();
+
+    /**
+     * @return true if the listener was not subscribed yet
+     */
+    public boolean add(T listener) {
+        return add(listener, ALL);
+    }
+
+    /**
+     * Subscribing an already registered listener replaces its mask.
+     *
+     * @return true if the listener was not subscribed yet
+     */
+    public boolean add(T listener, int mask) {
+        int index = mListeners.indexOf(listener);
+        if (index >= 0) {
+            mMasks.set(index, mask);
+            return false;
+        }
+        mListeners.add(listener);
+        mMasks.add(mask);
+        return true;
+    }
+
+    /**
+     * @return true if the listener was subscribed
+     */
+    public boolean remove(T listener) {
+        int index = mListeners.indexOf(listener);
+        if (index < 0) {
+            return false;
+        }
+        mListeners.remove(index);
+        mMasks.remove(index);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return mListeners.isEmpty();
+    }
+
+    /**
+     * @return the union of the masks of every listener
+     */
+    public int getMasks() {
+        int masks = 0;
+        for (int i = mMasks.size() - 1; i >= 0; i--) {
+            masks |= mMasks.get(i);
+        }
+        return masks;
+    }
+
+    public void dispatch(Dispatcher<T> dispatcher) {
+        dispatch(dispatcher, ALL);
+    }
+
+    /**
+     * Calls the dispatcher for every listener whose mask has one of the given events.
+     */
+    public void dispatch(Dispatcher<T> dispatcher, int mask) {
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            if (i >= mListeners.size()) continue;
+            if ((mMasks.get(i) & mask) != 0) {
+                dispatcher.dispatch(mListeners.get(i), mask);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ca.mlaflamme.clocktime;
+
+import android.animation.TimeInterpolator;
+
+/**
+ * Interpolator reading a curve sampled once at construction, with a linear interpolation
+ * between the samples. Each frame costs a multiplication and an array read instead of the
+ * trigonometry of the sampled curve.
+ */
+public class LookupTableInterpolator implements TimeInterpolator {
+    private final static String TAG = Utils.class.getName();
+
+    private final float[] mValues;
+    private final float mStepSize;
+
+    /**
+     * @param curve the curve to sample, only called from this constructor
+     * @param samples number of samples, including both ends
+     */
+    public LookupTableInterpolator(TimeInterpolator curve, int samples) {
+        mValues = new float[samples];
+        mStepSize = 1f / (samples - 1);
+        for (int i = 0; i < samples; i++) {
+            mValues[i] = curve.getInterpolation(i * mStepSize);
+        }
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        if (input >= 1) {
+            return mValues[mValues.length - 1];
+        }
+        if (input <= 0) {
+            return mValues[0];
+        }
+        float position = input / mStepSize;
+        int index = (int) position;
+        if (index >= mValues.length - 1) {
+            return mValues[mValues.length - 1];
+        }
+        float fraction = position - index;
+        return mValues[index] + fraction * (mValues[index + 1] - mValues[index]);
+    }
+}
@@ -0,0 +1,365 @@
+package ca.mlaflamme.clocktime;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.animation.TimeInterpolator;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+/**
+ * Moves the clock of the screensaver, with animators allocated once and reused for every move.
+ * <p>
+ * The animators drive the {@link View#X}, {@link View#Y}, {@link View#ALPHA} and scale
+ * properties directly instead of looking them up by name, each move only sets their start and
+ * end values.
+ * <p>
+ * In snapshot mode a slide draws the clock once into a bitmap shown in its place, and only that
+ * bitmap is moved: the ten seconds of the slide cost compositing only, whatever the clock holds.
+ * The live clock is swapped back in when the slide ends, the snapshot is drawn again if the
+ * minute changes meanwhile.
+ */
+public class MoveAnimator implements ClockTicker.OnTickListener {
+    private final static String TAG = Utils.class.getName();
+
+    /** Percentage of the original size to shrink to while moving. */
+    static final float SHRINKING_RATIO = 0.85f;
+
+    // Slow start with brakes, the curve is sampled once instead of computed every frame
+    private static final TimeInterpolator SLOW_START_WITH_BRAKES = new LookupTableInterpolator(
+            new TimeInterpolator() {
+                @Override
+                public float getInterpolation(float x) {
+                    return (float) (Math.cos((Math.pow(x, 3) + 1) * Math.PI) / 2.0f) + 0.5f;
+                }
+            }, 201);
+
+    // Appear: scale down to fit, fade in
+    private final PropertyValuesHolder mFitScaleX = PropertyValuesHolder.ofFloat(View.SCALE_X, 1, 1);
+    private final PropertyValuesHolder mFitScaleY = PropertyValuesHolder.ofFloat(View.SCALE_Y, 1, 1);
+    private final PropertyValuesHolder mAppearAlpha = PropertyValuesHolder.ofFloat(View.ALPHA, 0, 1);
+    private final ObjectAnimator mFit = ObjectAnimator.ofPropertyValuesHolder(null, mFitScaleX, mFitScaleY);
+    private final ObjectAnimator mAppear = ObjectAnimator.ofPropertyValuesHolder(null, mAppearAlpha);
+
+    // Slide: move and adjust the brightness while shrinking then growing back
+    private final PropertyValuesHolder mSlideX = PropertyValuesHolder.ofFloat(View.X, 0, 0);
+    private final PropertyValuesHolder mSlideY = PropertyValuesHolder.ofFloat(View.Y, 0, 0);
+    private final PropertyValuesHolder mSlideAlpha = PropertyValuesHolder.ofFloat(View.ALPHA, 0, 0);
+    private final PropertyValuesHolder mShrinkScaleX = PropertyValuesHolder.ofFloat(View.SCALE_X, 1, 1);
+    private final PropertyValuesHolder mShrinkScaleY = PropertyValuesHolder.ofFloat(View.SCALE_Y, 1, 1);
+    private final PropertyValuesHolder mGrowScaleX = PropertyValuesHolder.ofFloat(View.SCALE_X, 1, 1);
+    private final PropertyValuesHolder mGrowScaleY = PropertyValuesHolder.ofFloat(View.SCALE_Y, 1, 1);
+    private final ObjectAnimator mSlideMove = ObjectAnimator.ofPropertyValuesHolder(null, mSlideX, mSlideY, mSlideAlpha);
+    private final ObjectAnimator mSlideShrink = ObjectAnimator.ofPropertyValuesHolder(null, mShrinkScaleX, mShrinkScaleY);
+    private final ObjectAnimator mSlideGrow = ObjectAnimator.ofPropertyValuesHolder(null, mGrowScaleX, mGrowScaleY);
+    private final AnimatorSet mSlide = new AnimatorSet();
+
+    // Fade: fade out while shrinking, jump, fade in while growing back
+    private final PropertyValuesHolder mFadeOutAlpha = PropertyValuesHolder.ofFloat(View.ALPHA, 0, 0);
+    private final PropertyValuesHolder mFadeOutScaleX = PropertyValuesHolder.ofFloat(View.SCALE_X, 1, 1);
+    private final PropertyValuesHolder mFadeOutScaleY = PropertyValuesHolder.ofFloat(View.SCALE_Y, 1, 1);
+    private final PropertyValuesHolder mFadeInX = PropertyValuesHolder.ofFloat(View.X, 0, 0);
+    private final PropertyValuesHolder mFadeInY = PropertyValuesHolder.ofFloat(View.Y, 0, 0);
+    private final PropertyValuesHolder mFadeInAlpha = PropertyValuesHolder.ofFloat(View.ALPHA, 0, 0);
+    private final PropertyValuesHolder mFadeInScaleX = PropertyValuesHolder.ofFloat(View.SCALE_X, 1, 1);
+    private final PropertyValuesHolder mFadeInScaleY = PropertyValuesHolder.ofFloat(View.SCALE_Y, 1, 1);
+    private final ObjectAnimator mFadeOut = ObjectAnimator.ofPropertyValuesHolder(null,
+            mFadeOutAlpha, mFadeOutScaleX, mFadeOutScaleY);
+    private final ObjectAnimator mFadeIn = ObjectAnimator.ofPropertyValuesHolder(null,
+            mFadeInX, mFadeInY, mFadeInAlpha, mFadeInScaleX, mFadeInScaleY);
+    private final AnimatorSet mFade = new AnimatorSet();
+
+    // Pixel shift: steps around the position, in multiples of the shift step
+    private static final int[] SHIFT_ORBIT_X = { 0, 1, 1, 0, -1, -1, -1, 0, 1 };
+    private static final int[] SHIFT_ORBIT_Y = { 0, 0, 1, 1, 1, 0, -1, -1, -1 };
+    private static final float SHIFT_STEP_DP = 2;
+    private int mShiftIndex;
+
+    private View mTarget;
+
+    // Snapshot mode
+    private boolean mSnapshotSlide;
+    private ColorFilter mSnapshotFilter;
+    private final Canvas mSnapshotCanvas = new Canvas();
+    private Bitmap mSnapshotBitmap;
+    private ImageView mSnapshot;
+    private View mLiveView;
+
+    private final ViewTreeObserver.OnPreDrawListener mRedrawSnapshot =
+            new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    if (mLiveView != null) {
+                        mLiveView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Laid out with the new time by now
+                        drawSnapshot(mLiveView);
+                        mSnapshot.invalidate();
+                    }
+                    return true;
+                }
+            };
+
+    public MoveAnimator(long slideTime, long fadeTime) {
+        mAppear.setDuration(fadeTime);
+
+        mSlideMove.setDuration(slideTime);
+        mSlideShrink.setDuration(slideTime / 2);
+        mSlideGrow.setDuration(slideTime / 2);
+        mSlideMove.setInterpolator(SLOW_START_WITH_BRAKES);
+        mSlideShrink.setInterpolator(SLOW_START_WITH_BRAKES);
+        mSlideGrow.setInterpolator(SLOW_START_WITH_BRAKES);
+        mSlide.play(mSlideMove).with(mSlideShrink);
+        mSlide.play(mSlideGrow).after(mSlideShrink);
+        mSlide.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                // Also called when cancelled
+                hideSnapshot();
+            }
+        });
+
+        mFadeOut.setDuration(fadeTime);
+        mFadeOut.setInterpolator(new AccelerateInterpolator());
+        // The position jumps when the fade in starts, the clock being invisible
+        mFadeIn.setDuration(fadeTime);
+        mFadeIn.setInterpolator(new DecelerateInterpolator());
+        mFade.play(mFadeIn).after(mFadeOut);
+    }
+
+    private void setTarget(View view) {
+        if (mTarget != view) {
+            mTarget = view;
+            mFit.setTarget(view);
+            mAppear.setTarget(view);
+            mSlideMove.setTarget(view);
+            mSlideShrink.setTarget(view);
+            mSlideGrow.setTarget(view);
+            mFadeOut.setTarget(view);
+            mFadeIn.setTarget(view);
+        }
+    }
+
+    /**
+     * Slides a snapshot of the clock instead of the clock itself. Only for clocks that do not
+     * change more than once a minute.
+     */
+    public void setSnapshotSlide(boolean snapshotSlide) {
+        mSnapshotSlide = snapshotSlide;
+    }
+
+    /**
+     * @param layerPaint the paint of the layer of the clock, its color filter is applied to
+     *                   the snapshot
+     */
+    public void setSnapshotPaint(Paint layerPaint) {
+        mSnapshotFilter = layerPaint != null ? layerPaint.getColorFilter() : null;
+        if (mSnapshot != null) {
+            mSnapshot.setColorFilter(mSnapshotFilter);
+        }
+    }
+
+    /**
+     * Places the invisible clock right there and fades it in.
+     *
+     * @param sizeRatio the scale fitting the clock on the screen, 1 when it fits
+     */
+    public void appear(View view, float x, float y, float sizeRatio, float alpha) {
+        cancel();
+        setTarget(view);
+        view.setX(x);
+        view.setY(y);
+        if (sizeRatio != 1) {
+            mFitScaleX.setFloatValues(1, sizeRatio);
+            mFitScaleY.setFloatValues(1, sizeRatio);
+            mFit.start();
+        }
+        mAppearAlpha.setFloatValues(0, alpha);
+        mAppear.start();
+    }
+
+    /**
+     * Slides the clock to its next position, shrinking it on the way.
+     */
+    public void slide(View view, float x, float y, float sizeRatio, float fromAlpha, float toAlpha) {
+        cancel();
+        View target = mSnapshotSlide && showSnapshot(view) ? mSnapshot : view;
+        setTarget(target);
+        float shrunk = sizeRatio * SHRINKING_RATIO;
+        mSlideX.setFloatValues(target.getX(), x);
+        mSlideY.setFloatValues(target.getY(), y);
+        mSlideAlpha.setFloatValues(fromAlpha, toAlpha);
+        mShrinkScaleX.setFloatValues(sizeRatio, shrunk);
+        mShrinkScaleY.setFloatValues(sizeRatio, shrunk);
+        mGrowScaleX.setFloatValues(shrunk, sizeRatio);
+        mGrowScaleY.setFloatValues(shrunk, sizeRatio);
+        mSlide.start();
+    }
+
+    /**
+     * Fades the clock out, moves it while invisible and fades it back in.
+     */
+    public void fade(View view, float x, float y, float sizeRatio, float fromAlpha, float toAlpha) {
+        cancel();
+        setTarget(view);
+        float shrunk = sizeRatio * SHRINKING_RATIO;
+        mFadeOutAlpha.setFloatValues(fromAlpha, 0);
+        mFadeOutScaleX.setFloatValues(sizeRatio, shrunk);
+        mFadeOutScaleY.setFloatValues(sizeRatio, shrunk);
+        mFadeInX.setFloatValues(x, x);
+        mFadeInY.setFloatValues(y, y);
+        mFadeInAlpha.setFloatValues(0, toAlpha);
+        mFadeInScaleX.setFloatValues(shrunk, sizeRatio);
+        mFadeInScaleY.setFloatValues(shrunk, sizeRatio);
+        mFade.start();
+    }
+
+    /**
+     * Shifts the clock to the next point of a small orbit around its position, without any
+     * animation: the layer of the clock is only composited elsewhere.
+     *
+     * @param x left of the center of the orbit
+     * @param y top of the center of the orbit
+     * @param xrange room left for the clock horizontally, the shift stays inside
+     * @param yrange room left for the clock vertically, the shift stays inside
+     */
+    public void shift(View view, float x, float y, float xrange, float yrange, float alpha) {
+        cancel();
+        mShiftIndex = (mShiftIndex + 1) % SHIFT_ORBIT_X.length;
+        float step = SHIFT_STEP_DP * view.getResources().getDisplayMetrics().density;
+        view.setX(Math.max(0, Math.min(xrange, x + Math.round(SHIFT_ORBIT_X[mShiftIndex] * step))));
+        view.setY(Math.max(0, Math.min(yrange, y + Math.round(SHIFT_ORBIT_Y[mShiftIndex] * step))));
+        view.setAlpha(alpha);
+    }
+
+    /**
+     * Stops the running move where it is.
+     */
+    public void cancel() {
+        mFit.cancel();
+        mAppear.cancel();
+        mSlide.cancel();
+        mFade.cancel();
+    }
+
+    /**
+     * Stops the running move and frees the snapshot.
+     */
+    public void release() {
+        cancel();
+        if (mSnapshot != null) {
+            ViewGroup parent = (ViewGroup) mSnapshot.getParent();
+            if (parent != null) {
+                parent.removeView(mSnapshot);
+            }
+            mSnapshot = null;
+        }
+        if (mSnapshotBitmap != null) {
+            mSnapshotBitmap.recycle();
+            mSnapshotBitmap = null;
+        }
+    }
+
+    /**
+     * Shows a snapshot of the clock in its place, the clock being hidden.
+     *
+     * @return false if the clock cannot be snapshotted, it is then moved itself
+     */
+    private boolean showSnapshot(View view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (!(view.getParent() instanceof FrameLayout) || width == 0 || height == 0) {
+            return false;
+        }
+        FrameLayout parent = (FrameLayout) view.getParent();
+
+        if (mSnapshotBitmap == null || mSnapshotBitmap.getWidth() != width
+                || mSnapshotBitmap.getHeight() != height) {
+            if (mSnapshotBitmap != null) {
+                mSnapshotBitmap.recycle();
+                mSnapshotBitmap = null;
+            }
+            try {
+                mSnapshotBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                Log.w("No memory for a snapshot of " + width + "x" + height);
+                return false;
+            }
+        }
+        drawSnapshot(view);
+
+        if (mSnapshot == null || mSnapshot.getParent() != parent) {
+            if (mSnapshot != null && mSnapshot.getParent() != null) {
+                ((ViewGroup) mSnapshot.getParent()).removeView(mSnapshot);
+            }
+            mSnapshot = new ImageView(view.getContext());
+            mSnapshot.setScaleType(ImageView.ScaleType.FIT_XY);
+            mSnapshot.setColorFilter(mSnapshotFilter);
+            parent.addView(mSnapshot, parent.indexOfChild(view) + 1,
+                    new FrameLayout.LayoutParams(width, height));
+        } else if (mSnapshot.getLayoutParams().width != width
+                || mSnapshot.getLayoutParams().height != height) {
+            mSnapshot.setLayoutParams(new FrameLayout.LayoutParams(width, height));
+        }
+        mSnapshot.setImageBitmap(mSnapshotBitmap);
+        mSnapshot.setX(view.getX());
+        mSnapshot.setY(view.getY());
+        mSnapshot.setScaleX(view.getScaleX());
+        mSnapshot.setScaleY(view.getScaleY());
+        mSnapshot.setAlpha(view.getAlpha());
+        mSnapshot.setVisibility(View.VISIBLE);
+        view.setVisibility(View.INVISIBLE);
+
+        mLiveView = view;
+        ClockTicker.getInstance(view.getContext()).addListener(this, ClockTicker.MINUTE);
+        return true;
+    }
+
+    private void drawSnapshot(View view) {
+        mSnapshotBitmap.eraseColor(0);
+        mSnapshotCanvas.setBitmap(mSnapshotBitmap);
+        view.draw(mSnapshotCanvas);
+        mSnapshotCanvas.setBitmap(null);
+    }
+
+    /**
+     * Swaps the live clock back in, where the snapshot ended.
+     */
+    private void hideSnapshot() {
+        View view = mLiveView;
+        if (view == null) {
+            return;
+        }
+        mLiveView = null;
+        ClockTicker.getInstance(view.getContext()).removeListener(this);
+        view.getViewTreeObserver().removeOnPreDrawListener(mRedrawSnapshot);
+
+        view.setX(mSnapshot.getX());
+        view.setY(mSnapshot.getY());
+        view.setScaleX(mSnapshot.getScaleX());
+        view.setScaleY(mSnapshot.getScaleY());
+        view.setAlpha(mSnapshot.getAlpha());
+        view.setVisibility(View.VISIBLE);
+        mSnapshot.setVisibility(View.INVISIBLE);
+    }
+
+    /* the clock shows a new minute under the snapshot */
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        if (mLiveView != null) {
+            ViewTreeObserver observer = mLiveView.getViewTreeObserver();
+            observer.removeOnPreDrawListener(mRedrawSnapshot);
+            observer.addOnPreDrawListener(mRedrawSnapshot);
+        }
+    }
+}
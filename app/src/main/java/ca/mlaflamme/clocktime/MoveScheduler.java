@@ -0,0 +1,171 @@
+package ca.mlaflamme.clocktime;
+
+import android.os.SystemClock;
+
+/**
+ * Decides when the screensaver moves the clock next, and whether it moves at all.
+ * <p>
+ * The decision comes from a {@link Policy}, the default one moves less often once the
+ * screensaver ran for a while, more often before the next alarm, and not at all while the clock
+ * is so dim that burn-in does not matter. The last decisions are kept for inspection.
+ */
+public class MoveScheduler {
+    private final static String TAG = Utils.class.getName();
+
+    /** Moves at the base interval. */
+    public static final int NORMAL = 0;
+    /** Moves less often, nothing happened for a while. */
+    public static final int SLOW = 1;
+    /** Moves more often, the alarm is close. */
+    public static final int FAST = 2;
+    /** Does not move this time, the clock is too dim to burn in. */
+    public static final int SKIP = 3;
+    private static final String[] DECISION_NAMES = { "normal", "slow", "fast", "skip" };
+
+    private static final int HISTORY_SIZE = 32;
+
+    public interface Policy {
+        /**
+         * @param runningMillis how long the screensaver has been running
+         * @param millisToAlarm time left before the next alarm, {@link Long#MAX_VALUE} when
+         *                      there is none
+         * @param level how bright the clock is shown, from 0 to 1
+         * @return one of {@link #NORMAL}, {@link #SLOW}, {@link #FAST} and {@link #SKIP}
+         */
+        int decide(long runningMillis, long millisToAlarm, float level);
+    }
+
+    /**
+     * Slows down after an hour, speeds up the hour before the alarm, skips below 10% brightness.
+     */
+    public static class DefaultPolicy implements Policy {
+        private final long mIdleMillis;
+        private final long mAlarmWindowMillis;
+        private final float mMinLevel;
+
+        public DefaultPolicy() {
+            this(60 * 60 * 1000, 60 * 60 * 1000, 0.1f);
+        }
+
+        /**
+         * @param idleMillis running time after which the moves slow down
+         * @param alarmWindowMillis time before the alarm from which the moves speed up
+         * @param minLevel brightness under which the moves are skipped
+         */
+        public DefaultPolicy(long idleMillis, long alarmWindowMillis, float minLevel) {
+            mIdleMillis = idleMillis;
+            mAlarmWindowMillis = alarmWindowMillis;
+            mMinLevel = minLevel;
+        }
+
+        @Override
+        public int decide(long runningMillis, long millisToAlarm, float level) {
+            if (level < mMinLevel) {
+                return SKIP;
+            }
+            if (millisToAlarm >= 0 && millisToAlarm <= mAlarmWindowMillis) {
+                return FAST;
+            }
+            if (runningMillis >= mIdleMillis) {
+                return SLOW;
+            }
+            return NORMAL;
+        }
+    }
+
+    private final long mBaseInterval;
+    private final long mMinInterval;
+    private Policy mPolicy = new DefaultPolicy();
+    private long mStartTime;
+
+    private final long[] mHistoryTimes = new long[HISTORY_SIZE];
+    private final int[] mHistoryDecisions = new int[HISTORY_SIZE];
+    private final float[] mHistoryLevels = new float[HISTORY_SIZE];
+    private int mHistoryCount;
+    private final int[] mDecisionCounts = new int[DECISION_NAMES.length];
+
+    /**
+     * @param baseInterval interval between the moves when nothing changes it
+     * @param minInterval shortest interval, the moves must not overlap
+     */
+    public MoveScheduler(long baseInterval, long minInterval) {
+        mBaseInterval = baseInterval;
+        mMinInterval = minInterval;
+        reset();
+    }
+
+    public void setPolicy(Policy policy) {
+        mPolicy = policy;
+    }
+
+    /**
+     * Starts counting the running time again, when the screensaver starts.
+     */
+    public void reset() {
+        mStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Decides the current move and records it.
+     *
+     * @param alarmTime wall time of the next alarm, 0 when there is none
+     * @param level how bright the clock is shown, from 0 to 1
+     * @return one of {@link #NORMAL}, {@link #SLOW}, {@link #FAST} and {@link #SKIP}
+     */
+    public int decide(long alarmTime, float level) {
+        long now = System.currentTimeMillis();
+        long millisToAlarm = alarmTime != 0 ? alarmTime - now : Long.MAX_VALUE;
+        int decision = mPolicy.decide(SystemClock.elapsedRealtime() - mStartTime, millisToAlarm, level);
+
+        int index = mHistoryCount % HISTORY_SIZE;
+        mHistoryTimes[index] = now;
+        mHistoryDecisions[index] = decision;
+        mHistoryLevels[index] = level;
+        mHistoryCount++;
+        mDecisionCounts[decision]++;
+
+        if (Log.LOGV) Log.v("Move " + DECISION_NAMES[decision] + ", level " + level
+                + ", next in " + getInterval(decision) + " ms");
+        return decision;
+    }
+
+    /**
+     * @return the interval until the move following the decision
+     */
+    public long getInterval(int decision) {
+        switch (decision) {
+            case SLOW:
+                return mBaseInterval * 2;
+            case FAST:
+                return Math.max(mMinInterval, mBaseInterval / 2);
+            default:
+                return mBaseInterval;
+        }
+    }
+
+    /**
+     * @return how many times the decision was taken since this scheduler was created
+     */
+    public int getDecisionCount(int decision) {
+        return mDecisionCounts[decision];
+    }
+
+    /**
+     * @return the counts per decision and the last decisions, oldest first
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        for (int i = 0; i < DECISION_NAMES.length; i++) {
+            stats.append(DECISION_NAMES[i]).append(' ').append(mDecisionCounts[i]).append(", ");
+        }
+        stats.append("last:");
+        int first = Math.max(0, mHistoryCount - HISTORY_SIZE);
+        for (int i = first; i < mHistoryCount; i++) {
+            int index = i % HISTORY_SIZE;
+            stats.append(' ').append(mHistoryTimes[index]).append('=')
+                    .append(DECISION_NAMES[mHistoryDecisions[index]])
+                    .append('@').append(mHistoryLevels[index]);
+        }
+        return stats.toString();
+    }
+}
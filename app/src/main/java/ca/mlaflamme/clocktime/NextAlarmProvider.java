@@ -0,0 +1,237 @@
+package ca.mlaflamme.clocktime;
+
+import android.app.AlarmManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.text.TextUtils;
+
+/**
+ * Process-wide cache of the next alarm, read from the system only when it changes.
+ * <p>
+ * The trigger time and the formatted text are reloaded on the next alarm broadcasts and on
+ * changes of the formatted setting. The moments the alarm line shows up and the wake-up image
+ * starts fading in are scheduled as exact one-shot callbacks, so the subscribers hear about them
+ * on time instead of polling. The receivers are only registered while at least one subscriber
+ * is attached.
+ */
+public class NextAlarmProvider implements ClockTicker.OnTickListener,
+        DisplayConfig.OnConfigChangeListener {
+    private final static String TAG = Utils.class.getName();
+
+    // Hidden before Lollipop, still sent by the AOSP alarm clock
+    private static final String ACTION_ALARM_CHANGED = "android.intent.action.ALARM_CHANGED";
+
+    public interface OnNextAlarmChangeListener {
+        /**
+         * The next alarm changed, or one of its thresholds was crossed.
+         */
+        void onNextAlarmChanged(NextAlarmProvider provider);
+    }
+
+    private static NextAlarmProvider sInstance;
+
+    private final Context mAppContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ListenerList<OnNextAlarmChangeListener> mListeners = new ListenerList<>();
+    private boolean mRegistered;
+
+    private String mFormatted;
+    private long mTriggerTime;
+    private int mReloadCount;
+
+    private final ListenerList.Dispatcher<OnNextAlarmChangeListener> mDispatcher =
+            new ListenerList.Dispatcher<OnNextAlarmChangeListener>() {
+        @Override
+        public void dispatch(OnNextAlarmChangeListener listener, int mask) {
+            listener.onNextAlarmChanged(NextAlarmProvider.this);
+        }
+    };
+
+    private final Runnable mThreshold = new Runnable() {
+        @Override
+        public void run() {
+            notifyListeners();
+            schedule();
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            reloadAndNotify();
+        }
+    };
+
+    private final ContentObserver mFormattedObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            reloadAndNotify();
+        }
+    };
+
+    private NextAlarmProvider(Context context) {
+        mAppContext = context.getApplicationContext();
+    }
+
+    public static NextAlarmProvider getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NextAlarmProvider(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Subscribes a listener. The alarm can be read right away, the listener is only called back
+     * on the next change.
+     */
+    public void addListener(OnNextAlarmChangeListener listener) {
+        mListeners.add(listener);
+
+        if (!mRegistered) {
+            mRegistered = true;
+            IntentFilter filter = new IntentFilter(ACTION_ALARM_CHANGED);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                filter.addAction(AlarmManager.ACTION_NEXT_ALARM_CLOCK_CHANGED);
+            }
+            mAppContext.registerReceiver(mReceiver, filter, null, mHandler);
+            mAppContext.getContentResolver().registerContentObserver(
+                    Settings.System.getUriFor(Settings.System.NEXT_ALARM_FORMATTED), false,
+                    mFormattedObserver);
+            // The thresholds are wall times, they move with the clock and the settings
+            ClockTicker.getInstance(mAppContext).addListener(this, 0);
+            DisplayConfig.get(mAppContext);
+            DisplayConfig.addListener(this);
+
+            // The alarm may have changed while nothing was listening
+            reload();
+            schedule();
+        }
+    }
+
+    public void removeListener(OnNextAlarmChangeListener listener) {
+        mListeners.remove(listener);
+
+        if (mListeners.isEmpty() && mRegistered) {
+            mRegistered = false;
+            mAppContext.unregisterReceiver(mReceiver);
+            mAppContext.getContentResolver().unregisterContentObserver(mFormattedObserver);
+            ClockTicker.getInstance(mAppContext).removeListener(this);
+            DisplayConfig.removeListener(this);
+            mHandler.removeCallbacks(mThreshold);
+
+            if (Log.LOGV) Log.v("Next alarm read " + mReloadCount + " times");
+        }
+    }
+
+    private void reload() {
+        mReloadCount++;
+        mFormatted = Settings.System.getString(mAppContext.getContentResolver(),
+                Settings.System.NEXT_ALARM_FORMATTED);
+        mTriggerTime = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            AlarmManager alarmManager = (AlarmManager) mAppContext.getSystemService(Context.ALARM_SERVICE);
+            AlarmManager.AlarmClockInfo alarmClockInfo = alarmManager.getNextAlarmClock();
+            if (alarmClockInfo != null) {
+                mTriggerTime = alarmClockInfo.getTriggerTime();
+            }
+        }
+    }
+
+    private void reloadAndNotify() {
+        String formatted = mFormatted;
+        long triggerTime = mTriggerTime;
+        reload();
+        if (triggerTime != mTriggerTime || !TextUtils.equals(formatted, mFormatted)) {
+            notifyListeners();
+        }
+        schedule();
+    }
+
+    private void notifyListeners() {
+        mListeners.dispatch(mDispatcher);
+    }
+
+    /**
+     * Posts the callback at the next threshold still to come: the alarm line showing up, then
+     * the wake-up window starting.
+     */
+    private void schedule() {
+        mHandler.removeCallbacks(mThreshold);
+        if (mListeners.isEmpty() || mTriggerTime == 0) {
+            return;
+        }
+
+        DisplayConfig config = DisplayConfig.get(mAppContext);
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        long[] thresholds = {
+                config.getAlarmHideUntilSeconds() != 0
+                        ? mTriggerTime - config.getAlarmHideUntilSeconds() * 1000L : 0,
+                mTriggerTime - config.getWakeupStartSeconds() * 1000L,
+        };
+        for (long threshold : thresholds) {
+            if (threshold > now && threshold < next) {
+                next = threshold;
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            mHandler.postAtTime(mThreshold, SystemClock.uptimeMillis() + next - now);
+        }
+    }
+
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        // Only subscribed to TIME_CHANGED: what was hidden may have to show up now
+        notifyListeners();
+        schedule();
+    }
+
+    @Override
+    public void onConfigChanged(DisplayConfig config, String key) {
+        if (ScreensaverSettingsActivity.KEY_ALARM_HIDE_UNTIL_HOURS.equals(key)
+                || ScreensaverSettingsActivity.KEY_WAKEUP_START_TIME.equals(key)) {
+            schedule();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!mRegistered) {
+            // Nothing tells us about changes, reads it each time
+            reload();
+        }
+    }
+
+    /** @return the next alarm as formatted by the alarm clock, null or empty when there is none */
+    public String getFormatted() {
+        ensureLoaded();
+        return mFormatted;
+    }
+
+    /** @return wall time of the next alarm, 0 when there is none or before Lollipop */
+    public long getTriggerTime() {
+        ensureLoaded();
+        return mTriggerTime;
+    }
+
+    /**
+     * @return true if the alarm line is shown, there is an alarm and it is closer than
+     * {@link DisplayConfig#getAlarmHideUntilSeconds()}
+     */
+    public boolean isAlarmShown(DisplayConfig config) {
+        ensureLoaded();
+        if (mFormatted == null || mFormatted.isEmpty()) {
+            return false;
+        }
+        long timeUntilShowUp = config.getAlarmHideUntilSeconds();
+        long delta = (mTriggerTime - System.currentTimeMillis()) / 1000;
+        return timeUntilShowUp == 0 || delta <= timeUntilShowUp;
+    }
+}
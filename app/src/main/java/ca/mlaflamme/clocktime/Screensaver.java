@@ -22,7 +22,6 @@ import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.service.dreams.DreamService;
 import android.util.Log;
 import android.view.View;
@@ -61,7 +60,7 @@ public class Screensaver extends DreamService {
     }
 
     private boolean isAutoOrientationForced() {
-        return PreferenceManager.getDefaultSharedPreferences(this).getBoolean(ScreensaverSettingsActivity.KEY_ORIENTATION, false);
+        return DisplayConfig.get(this).isOrientationLocked();
     }
 
     @Override
@@ -128,10 +127,9 @@ public class Screensaver extends DreamService {
         if (Build.VERSION.SDK_INT >= 19) {
             Utils.hideSystemUiAndRetry(mContentView);
         }
-        boolean useSlideEffect = PreferenceManager.getDefaultSharedPreferences(this).getBoolean(
-                ScreensaverSettingsActivity.KEY_SLIDE_EFFECT,
-                ScreensaverSettingsActivity.KEY_SLIDE_EFFECT_DEFAULT);
+        boolean useSlideEffect = DisplayConfig.get(this).isSlideEffect();
         mMoveSaverRunnable.setSlideEffect(useSlideEffect);
+        mMoveSaverRunnable.setPixelShift(DisplayConfig.get(this).isPixelShift());
         mMoveSaverRunnable.setNotificationReceiver(getApplicationContext());
         mMoveSaverRunnable.registerViews(mContentView, mSaverView);
         mHandler.post(mMoveSaverRunnable);
@@ -20,7 +20,6 @@ import android.content.Intent;
 import android.content.res.Configuration;
 import android.os.Bundle;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
@@ -64,9 +63,9 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
     public void onResume() {
         super.onResume();
 
-        boolean useSlideEffect = PreferenceManager.getDefaultSharedPreferences(this).getBoolean(
-                ScreensaverSettingsActivity.KEY_SLIDE_EFFECT, false);
+        boolean useSlideEffect = DisplayConfig.get(this).isSlideEffect();
         mMoveSaverRunnable.setSlideEffect(useSlideEffect);
+        mMoveSaverRunnable.setPixelShift(DisplayConfig.get(this).isPixelShift());
         mMoveSaverRunnable.setNotificationReceiver(getApplicationContext());
 
 
@@ -23,6 +23,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.*;
@@ -73,6 +74,8 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
     static final String KEY_BATTERY = "battery";
     static final String KEY_SLIDE_EFFECT = "slide";
     static final boolean KEY_SLIDE_EFFECT_DEFAULT = false;
+    static final String KEY_PIXEL_SHIFT = "pixel_shift";
+    static final boolean KEY_PIXEL_SHIFT_DEFAULT = false;
     static final String KEY_ABOUT = "about";
     static final long TIP_DELAY = 1000 * 3600 * 24; // 24h
     public static final int REQUEST_CODE_NOTIF = 1;
@@ -118,19 +121,48 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
 
             if (resultCode == Activity.RESULT_OK) {
                 if (requestCode == PICK_IMAGE_BACKGROUND_REQUEST) {
-                    image_background = Utils.getImagePath(context, data.getData());
-                    Preference preference = findPreference(KEY_PATH_BACKGROUND_IMAGE);
-                    preference.getEditor().putString(KEY_PATH_BACKGROUND_IMAGE, image_background).commit();
+                    importImage(context, data.getData(), KEY_PATH_BACKGROUND_IMAGE);
                 }
 
                 if (requestCode == PICK_IMAGE_WAKEUP_REQUEST) {
-                    image_wakeup = Utils.getImagePath(context, data.getData());
-                    Preference preference = findPreference(KEY_PATH_WAKEUP_IMAGE);
-                    preference.getEditor().putString(KEY_PATH_WAKEUP_IMAGE, image_wakeup).commit();
+                    importImage(context, data.getData(), KEY_PATH_WAKEUP_IMAGE);
                 }
             }
         }
 
+        /**
+         * Stores a display-sized copy of the image and points the preference at it. Falls back
+         * to the path of the original if it cannot be imported.
+         */
+        private void importImage(Context context, final Uri uri, final String key) {
+            final Context appContext = context.getApplicationContext();
+            ImageImporter.importImage(appContext, uri, key, new ImageImporter.OnImportListener() {
+                @Override
+                public void onImported(String path) {
+                    if (path == null) {
+                        try {
+                            path = Utils.getImagePath(appContext, uri);
+                        } catch (RuntimeException e) {
+                            Log.e("Cannot set image " + uri, e);
+                            return;
+                        }
+                    }
+                    if (KEY_PATH_BACKGROUND_IMAGE.equals(key)) {
+                        image_background = path;
+                    } else {
+                        image_wakeup = path;
+                    }
+                    // The fragment may be gone by now, same shared preferences
+                    SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+                    String previous = sp.getString(key, null);
+                    sp.edit().putString(key, path).commit();
+                    if (!path.equals(previous)) {
+                        ImageImporter.deleteImport(appContext, previous);
+                    }
+                }
+            });
+        }
+
         private void initPreferences() {
             setAutoBrightnessCheckbox();
             setAvailableSizes();
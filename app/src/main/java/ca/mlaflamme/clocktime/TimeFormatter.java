@@ -0,0 +1,118 @@
+package ca.mlaflamme.clocktime;
+
+import android.text.format.DateFormat;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Precomputed hour, minute and AM/PM strings, so that formatting the time on a tick is an array
+ * lookup instead of a pattern parsing.
+ * <p>
+ * The tables are built once per locale and 12/24-hour setting and shared by every clock view.
+ */
+public class TimeFormatter {
+    private final static String TAG = Utils.class.getName();
+    private final static String HOURS_24 = "kk";
+    private final static String HOURS = "h";
+    private final static String MINUTES = ":mm";
+
+    private static TimeFormatter sInstance;
+
+    private final Locale mLocale;
+    private final boolean m24HourMode;
+    private final String[] mHours = new String[24];
+    private final String[] mMinutes = new String[60];
+    private final String[] mAmPm;
+    private final String[] mGlyphs;
+    private int mDescribedHour = -1, mDescribedMinute = -1;
+    private String mDescription;
+
+    /**
+     * @return the tables for the default locale and the given mode, rebuilt only if one of them
+     * changed since the last call.
+     */
+    public static TimeFormatter get(boolean is24HourMode) {
+        Locale locale = Locale.getDefault();
+        if (sInstance == null || sInstance.m24HourMode != is24HourMode
+                || !sInstance.mLocale.equals(locale)) {
+            sInstance = new TimeFormatter(locale, is24HourMode);
+        }
+        return sInstance;
+    }
+
+    private TimeFormatter(Locale locale, boolean is24HourMode) {
+        mLocale = locale;
+        m24HourMode = is24HourMode;
+
+        // Formatted by the platform once, so the digits stay exactly the ones it would display.
+        // A fixed UTC date, every hour exists, even on a daylight saving change day.
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), locale);
+        calendar.clear();
+        calendar.set(2000, Calendar.JANUARY, 1);
+        String hoursFormat = is24HourMode ? HOURS_24 : HOURS;
+        for (int hour = 0; hour < 24; hour++) {
+            calendar.set(Calendar.HOUR_OF_DAY, hour);
+            mHours[hour] = DateFormat.format(hoursFormat, calendar).toString();
+        }
+        for (int minute = 0; minute < 60; minute++) {
+            calendar.set(Calendar.MINUTE, minute);
+            mMinutes[minute] = DateFormat.format(MINUTES, calendar).toString();
+        }
+
+        StringBuilder glyphs = new StringBuilder();
+        for (String[] table : new String[][] { mHours, mMinutes }) {
+            for (String s : table) {
+                for (int i = 0; i < s.length(); i++) {
+                    if (glyphs.indexOf(String.valueOf(s.charAt(i))) < 0) {
+                        glyphs.append(s.charAt(i));
+                    }
+                }
+            }
+        }
+        mGlyphs = new String[glyphs.length()];
+        for (int i = 0; i < mGlyphs.length; i++) {
+            mGlyphs[i] = String.valueOf(glyphs.charAt(i));
+        }
+
+        mAmPm = new DateFormatSymbols(locale).getAmPmStrings();
+    }
+
+    public boolean is24HourMode() { return m24HourMode; }
+
+    /** @param hourOfDay from 0 to 23 */
+    public String getHours(int hourOfDay) { return mHours[hourOfDay]; }
+
+    /** @return the minutes with their leading separator, ":05" for instance */
+    public String getMinutes(int minute) { return mMinutes[minute]; }
+
+    public String getAmPm(int hourOfDay) { return hourOfDay < 12 ? mAmPm[0] : mAmPm[1]; }
+
+    /**
+     * @return the time as read by accessibility services, built once per minute
+     */
+    public String getContentDescription(int hourOfDay, int minute) {
+        if (hourOfDay != mDescribedHour || minute != mDescribedMinute) {
+            mDescribedHour = hourOfDay;
+            mDescribedMinute = minute;
+            mDescription = m24HourMode ? mHours[hourOfDay] + mMinutes[minute]
+                    : mHours[hourOfDay] + mMinutes[minute] + getAmPm(hourOfDay);
+        }
+        return mDescription;
+    }
+
+    /*
+     * The whole tables, to measure every string that can be displayed. Shared, not to be modified.
+     */
+
+    public String[] getHoursTable() { return mHours; }
+
+    public String[] getMinutesTable() { return mMinutes; }
+
+    public String[] getAmPmTable() { return mAmPm; }
+
+    /** @return every distinct character used by the hours and minutes, one per string */
+    public String[] getGlyphs() { return mGlyphs; }
+}
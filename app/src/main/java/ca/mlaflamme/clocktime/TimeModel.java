@@ -0,0 +1,136 @@
+package ca.mlaflamme.clocktime;
+
+import java.util.TimeZone;
+
+/**
+ * Allocation-free local time, derived from the wall clock and a cached zone offset.
+ * <p>
+ * The offset is only recomputed when the next DST transition is reached or when the time zone
+ * is replaced, so {@link #update(long)} can run every second without creating any object.
+ */
+public class TimeModel {
+    private final static String TAG = Utils.class.getName();
+
+    private static final long SECOND_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    private TimeZone mTimeZone;
+    private int mOffset;
+    private long mOffsetValidFrom;
+    private long mOffsetValidUntil;
+
+    private long mTimeMillis;
+    private long mLocalDay;
+    private int mHourOfDay;
+    private int mMinute;
+    private int mSecond;
+    private int mMillis;
+
+    public TimeModel() {
+        setTimeZone(TimeZone.getDefault());
+    }
+
+    /**
+     * Replaces the time zone, on ACTION_TIMEZONE_CHANGED for instance.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mOffsetValidFrom = Long.MAX_VALUE;
+        mOffsetValidUntil = Long.MIN_VALUE;
+    }
+
+    public TimeZone getTimeZone() { return mTimeZone; }
+
+    public void update() {
+        update(System.currentTimeMillis());
+    }
+
+    public void update(long timeMillis) {
+        mTimeMillis = timeMillis;
+
+        if (timeMillis < mOffsetValidFrom || timeMillis >= mOffsetValidUntil) {
+            computeOffset(timeMillis);
+        }
+
+        long local = timeMillis + mOffset;
+        long millisOfDay = local % DAY_MILLIS;
+        if (millisOfDay < 0) {
+            millisOfDay += DAY_MILLIS;
+        }
+        mLocalDay = (local - millisOfDay) / DAY_MILLIS;
+
+        mHourOfDay = (int) (millisOfDay / HOUR_MILLIS);
+        mMinute = (int) (millisOfDay / MINUTE_MILLIS % 60);
+        mSecond = (int) (millisOfDay / SECOND_MILLIS % 60);
+        mMillis = (int) (millisOfDay % SECOND_MILLIS);
+    }
+
+    /**
+     * Caches the offset at the given time and finds, within a day, the next instant where it
+     * changes. Transitions are searched with a minute precision.
+     */
+    private void computeOffset(long timeMillis) {
+        mOffset = mTimeZone.getOffset(timeMillis);
+        mOffsetValidFrom = timeMillis;
+
+        long low = timeMillis;
+        long high = timeMillis + DAY_MILLIS;
+        if (mTimeZone.getOffset(high) == mOffset) {
+            mOffsetValidUntil = high;
+            return;
+        }
+
+        while (high - low > MINUTE_MILLIS) {
+            long mid = low + (high - low) / 2;
+            if (mTimeZone.getOffset(mid) == mOffset) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        mOffsetValidUntil = high - high % MINUTE_MILLIS;
+        if (mOffsetValidUntil <= timeMillis) {
+            mOffsetValidUntil = high;
+        }
+    }
+
+    public long getTimeMillis() { return mTimeMillis; }
+
+    /** @return the current zone offset in milliseconds */
+    public int getOffset() { return mOffset; }
+
+    /** @return the number of local days since the epoch, changes at local midnight */
+    public long getLocalDay() { return mLocalDay; }
+
+    public int getHourOfDay() { return mHourOfDay; }
+
+    public int getHour() { return mHourOfDay % 12; }
+
+    public int getMinute() { return mMinute; }
+
+    public int getSecond() { return mSecond; }
+
+    public int getMillis() { return mMillis; }
+
+    /** @return the hour hand angle in degrees, moving with the minutes and seconds */
+    public float getHourAngle() {
+        return (getHour() + (mMinute + mSecond / 60.0f) / 60.0f) / 12.0f * 360.0f;
+    }
+
+    /** @return the minute hand angle in degrees, moving with the seconds */
+    public float getMinuteAngle() {
+        return (mMinute + mSecond / 60.0f) / 60.0f * 360.0f;
+    }
+
+    /** @return the second hand angle in degrees, ticking every second */
+    public float getSecondAngle() {
+        return mSecond / 60.0f * 360.0f;
+    }
+
+    /** @return the second hand angle in degrees, sweeping with the milliseconds */
+    public float getSweepSecondAngle() {
+        return (mSecond + mMillis / 1000.0f) / 60.0f * 360.0f;
+    }
+}
@@ -0,0 +1,116 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+import android.os.Process;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+import java.util.HashMap;
+
+/**
+ * Process-wide typefaces, keyed by asset path.
+ * <p>
+ * Each font file is parsed once and the same Typeface instance is then handed to every view, so
+ * reloading the layouts neither parses the assets again nor allocates native font memory. The
+ * configured fonts can be loaded ahead of time, off the main thread. Thread-safe.
+ */
+public class TypefaceRegistry {
+    private final static String TAG = Utils.class.getName();
+    static final String DEFAULT_FONT = "fonts/Roboto-Regular.ttf";
+    static final String THIN_FONT = "fonts/Roboto-Thin.ttf";
+    static final String BOLD_FONT = "fonts/Roboto-Bold.ttf";
+
+    private static final HashMap<String, Typeface> sTypefaces = new HashMap<>();
+    private static int sHits, sMisses;
+    private static long sLoadTimeMillis;
+
+    private TypefaceRegistry() {
+    }
+
+    /**
+     * @return the typeface of the asset, loaded on the first request only. A missing asset falls
+     * back to the default font, and is remembered as such.
+     */
+    public static Typeface get(Context context, String path) {
+        synchronized (sTypefaces) {
+            Typeface typeface = sTypefaces.get(path);
+            if (typeface != null) {
+                sHits++;
+                return typeface;
+            }
+            sMisses++;
+
+            // Loaded under the lock, a preload in progress is waited for instead of duplicated
+            AssetManager assets = context.getApplicationContext().getAssets();
+            long start = SystemClock.elapsedRealtime();
+            try {
+                typeface = Typeface.createFromAsset(assets, path);
+            } catch (RuntimeException e) {
+                android.util.Log.w(TAG, "getTypeface: asset " + path + " not found, default: \"" + DEFAULT_FONT + "\" used");
+                typeface = DEFAULT_FONT.equals(path) ? Typeface.DEFAULT : get(context, DEFAULT_FONT);
+            }
+            sLoadTimeMillis += SystemClock.elapsedRealtime() - start;
+
+            sTypefaces.put(path, typeface);
+            return typeface;
+        }
+    }
+
+    /**
+     * Loads the time fonts and the fonts chosen for the date and the alarm on a background
+     * thread, so the first clock layout finds them ready.
+     */
+    public static void preload(Context context) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(appContext);
+                String[] paths = {
+                        THIN_FONT,
+                        BOLD_FONT,
+                        DEFAULT_FONT,
+                        pref.getString(ScreensaverSettingsActivity.KEY_DATE_FONT,
+                                appContext.getString(R.string.default_date_clock_font)),
+                        pref.getString(ScreensaverSettingsActivity.KEY_ALARM_FONT,
+                                appContext.getString(R.string.default_alarm_clock_font)),
+                };
+                for (String path : paths) {
+                    get(appContext, path);
+                }
+                if (Log.LOGV) Log.v("Typefaces preloaded: " + getStats());
+            }
+        }, "TypefacePreload").start();
+    }
+
+    public static int getHitCount() {
+        synchronized (sTypefaces) {
+            return sHits;
+        }
+    }
+
+    public static int getMissCount() {
+        synchronized (sTypefaces) {
+            return sMisses;
+        }
+    }
+
+    /** @return the total time spent parsing font files */
+    public static long getLoadTimeMillis() {
+        synchronized (sTypefaces) {
+            return sLoadTimeMillis;
+        }
+    }
+
+    public static String getStats() {
+        synchronized (sTypefaces) {
+            return sTypefaces.size() + " typefaces, " + sHits + " hits, " + sMisses + " misses, "
+                    + sLoadTimeMillis + " ms loading";
+        }
+    }
+}
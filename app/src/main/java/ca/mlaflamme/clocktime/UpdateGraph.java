@@ -0,0 +1,201 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Redraws each element around the clock (date, next alarm, battery, images) only when its own
+ * source changed, instead of refreshing all of them on every move.
+ * <p>
+ * The date follows the day changes of {@link ClockTicker}, the alarm {@link NextAlarmProvider},
+ * the battery {@link BatteryMonitor} and every element the preferences it is drawn from. Changes
+ * are coalesced and rendered once on the next loop. The former full refreshes go through
+ * {@link #requestUpdate()}, which only renders what is outdated and counts the rest as avoided.
+ */
+public class UpdateGraph implements ClockTicker.OnTickListener,
+        DisplayConfig.OnConfigChangeListener, BatteryMonitor.OnBatteryChangeListener,
+        NextAlarmProvider.OnNextAlarmChangeListener {
+    private final static String TAG = Utils.class.getName();
+
+    public static final int DATE = 1;
+    public static final int ALARM = 1 << 1;
+    public static final int BATTERY = 1 << 2;
+    public static final int IMAGES = 1 << 3;
+    private static final int ELEMENT_COUNT = 4;
+
+    public interface Renderer {
+        /**
+         * @param element one of {@link #DATE}, {@link #ALARM}, {@link #BATTERY}, {@link #IMAGES}
+         */
+        void render(int element);
+    }
+
+    private final Context mAppContext;
+    private final Renderer mRenderer;
+    private final int mElements;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mDirty;
+    private boolean mStarted;
+
+    private final int[] mRenderCounts = new int[ELEMENT_COUNT];
+    private int mAvoidedCount;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate(DATE);
+        }
+    };
+
+    /**
+     * @param elements the elements drawn by the renderer, a mask of {@link #DATE},
+     *                 {@link #ALARM}, {@link #BATTERY} and {@link #IMAGES}
+     */
+    public UpdateGraph(Context context, int elements, Renderer renderer) {
+        mAppContext = context.getApplicationContext();
+        mElements = elements;
+        mRenderer = renderer;
+    }
+
+    /**
+     * Subscribes to the sources of the elements and renders all of them once.
+     */
+    public void start() {
+        if (!mStarted) {
+            mStarted = true;
+
+            if ((mElements & DATE) != 0) {
+                mAppContext.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+                ClockTicker.getInstance(mAppContext).addListener(this, ClockTicker.DAY);
+            }
+            if ((mElements & (ALARM | IMAGES)) != 0) {
+                // The wake-up image fades in before the alarm
+                NextAlarmProvider.getInstance(mAppContext).addListener(this);
+            }
+            if ((mElements & BATTERY) != 0) {
+                BatteryMonitor.getInstance(mAppContext).addListener(this);
+            }
+
+            DisplayConfig.get(mAppContext);
+            DisplayConfig.addListener(this);
+        }
+        invalidate(mElements);
+        flush();
+    }
+
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        if ((mElements & DATE) != 0) {
+            mAppContext.unregisterReceiver(mReceiver);
+        }
+        ClockTicker.getInstance(mAppContext).removeListener(this);
+        NextAlarmProvider.getInstance(mAppContext).removeListener(this);
+        BatteryMonitor.getInstance(mAppContext).removeListener(this);
+        DisplayConfig.removeListener(this);
+        mHandler.removeCallbacks(mFlush);
+        mDirty = 0;
+
+        if (Log.LOGV) Log.v("Update graph stopped: " + getStats());
+    }
+
+    /**
+     * Marks elements as outdated, they are rendered once on the next loop.
+     */
+    public void invalidate(int elements) {
+        elements &= mElements;
+        if (elements == 0 || !mStarted) {
+            return;
+        }
+        if (mDirty == 0) {
+            mHandler.post(mFlush);
+        }
+        mDirty |= elements;
+    }
+
+    /**
+     * Full refresh requested by the caller, e.g. after a move: only the outdated elements are
+     * rendered, the others are counted as avoided updates.
+     */
+    public void requestUpdate() {
+        mAvoidedCount += Integer.bitCount(mElements & ~mDirty);
+        flush();
+    }
+
+    private void flush() {
+        mHandler.removeCallbacks(mFlush);
+        int dirty = mDirty;
+        mDirty = 0;
+        for (int i = 0; i < ELEMENT_COUNT; i++) {
+            int element = 1 << i;
+            if ((dirty & element) != 0) {
+                mRenderCounts[i]++;
+                mRenderer.render(element);
+            }
+        }
+    }
+
+    @Override
+    public void onTick(ClockTicker ticker, int boundaries) {
+        invalidate(DATE);
+    }
+
+    @Override
+    public void onNextAlarmChanged(NextAlarmProvider provider) {
+        invalidate(ALARM | IMAGES);
+    }
+
+    @Override
+    public void onBatteryChanged(BatteryMonitor monitor) {
+        invalidate(BATTERY);
+    }
+
+    @Override
+    public void onConfigChanged(DisplayConfig config, String key) {
+        if (ScreensaverSettingsActivity.KEY_DATE_COLOR.equals(key)) {
+            invalidate(DATE);
+        } else if (ScreensaverSettingsActivity.KEY_ALARM_COLOR.equals(key)
+                || ScreensaverSettingsActivity.KEY_ALARM_HIDE_UNTIL_HOURS.equals(key)) {
+            invalidate(ALARM);
+        } else if (ScreensaverSettingsActivity.KEY_BATTERY.equals(key)) {
+            invalidate(BATTERY);
+        } else if (ScreensaverSettingsActivity.KEY_PATH_BACKGROUND_IMAGE.equals(key)
+                || ScreensaverSettingsActivity.KEY_BACKGROUND_BRIGHTNESS.equals(key)
+                || ScreensaverSettingsActivity.KEY_PATH_WAKEUP_IMAGE.equals(key)
+                || ScreensaverSettingsActivity.KEY_WAKEUP_START_TIME.equals(key)
+                || ScreensaverSettingsActivity.KEY_WAKEUP_FULL_BRIGHTNESS_TIME.equals(key)) {
+            invalidate(IMAGES);
+        }
+    }
+
+    /**
+     * @return how many times the element was rendered since this graph was created
+     */
+    public int getRenderCount(int element) {
+        return mRenderCounts[Integer.numberOfTrailingZeros(element)];
+    }
+
+    /**
+     * @return how many element renderings the full refreshes would have done for nothing
+     */
+    public int getAvoidedCount() { return mAvoidedCount; }
+
+    public String getStats() {
+        return "date " + mRenderCounts[0] + ", alarm " + mRenderCounts[1] + ", battery "
+                + mRenderCounts[2] + ", images " + mRenderCounts[3] + " renders, "
+                + mAvoidedCount + " avoided";
+    }
+}
@@ -17,13 +17,10 @@
 package ca.mlaflamme.clocktime;
 
 import android.annotation.TargetApi;
-import android.app.AlarmManager;
 import android.app.Notification;
-import android.app.PendingIntent;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -31,22 +28,21 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ResolveInfo;
 import android.content.res.Configuration;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
-import android.os.BatteryManager;
 import android.os.Build;
 import android.os.CountDownTimer;
 import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.MediaStore;
-import android.provider.Settings;
 import android.service.dreams.DreamService;
 import android.service.notification.StatusBarNotification;
+import android.text.TextUtils;
 import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
@@ -55,11 +51,7 @@ import android.view.WindowManager;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.io.File;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -70,6 +62,12 @@ import ca.mlaflamme.clocktime.preference.SeekBarPreference;
 public class Utils {
     private final static String TAG = Utils.class.getName();
 
+    private static final DisplayImageLoader sBackgroundLoader =
+            new DisplayImageLoader(Bitmap.Config.RGB_565);
+    private static final DisplayImageLoader sWakeupLoader =
+            new DisplayImageLoader(Bitmap.Config.RGB_565);
+    private static final WakeupFader sWakeupFader = new WakeupFader();
+
     private final static String PARAM_LANGUAGE_CODE = "hl";
 
     /**
@@ -82,12 +80,6 @@ public class Utils {
      */
     private static String sCachedVersionCode = null;
 
-    /**
-     * Intent to be used for checking if a clock's date has changed. Must be every fifteen
-     * minutes because not all time zones are hour-locked.
-     **/
-    public static final String ACTION_ON_QUARTER_HOUR = "ca.mlaflamme.clocktime.ON_QUARTER_HOUR";
-
     /** Types that may be used for clock displays. **/
     public static final String CLOCK_TYPE_DIGITAL2 = "digital2";
     public static final String CLOCK_TYPE_DIGITAL = "digital";
@@ -172,50 +164,6 @@ public class Utils {
         return R.color.clock_gray;
     }
 
-    /** Setup to find out when the quarter-hour changes (e.g. Kathmandu is GMT+5:45) **/
-    public static long getAlarmOnQuarterHour() {
-        Calendar nextQuarter = Calendar.getInstance();
-        // Set 1 second to ensure quarter-hour threshold passed.
-        nextQuarter.set(Calendar.SECOND, 1);
-        int minute = nextQuarter.get(Calendar.MINUTE);
-        nextQuarter.add(Calendar.MINUTE, 15 - (minute % 15));
-        long alarmOnQuarterHour = nextQuarter.getTimeInMillis();
-        if (0 >= (alarmOnQuarterHour - System.currentTimeMillis()) || (alarmOnQuarterHour - System.currentTimeMillis()) > 901000) {
-            Log.wtf("quarterly alarm calculation error");
-        }
-        return alarmOnQuarterHour;
-    }
-
-
-    public static void cancelAlarmOnQuarterHour(Context context, PendingIntent quarterlyIntent) {
-        if (quarterlyIntent != null && context != null) {
-            ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).cancel(
-                    quarterlyIntent);
-        }
-    }
-
-
-    /**
-     * Setup alarm refresh when the quarter-hour changes *
-     */
-    public static PendingIntent startAlarmOnQuarterHour(Context context) {
-        if (context != null) {
-            PendingIntent quarterlyIntent = PendingIntent.getBroadcast(
-                    context, 0, new Intent(Utils.ACTION_ON_QUARTER_HOUR), 0);
-            ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).setRepeating(
-                    AlarmManager.RTC, getAlarmOnQuarterHour(),
-                    AlarmManager.INTERVAL_FIFTEEN_MINUTES, quarterlyIntent);
-            return quarterlyIntent;
-        } else {
-            return null;
-        }
-    }
-
-    public static PendingIntent refreshAlarmOnQuarterHour(
-            Context context, PendingIntent quarterlyIntent) {
-        cancelAlarmOnQuarterHour(context, quarterlyIntent);
-        return startAlarmOnQuarterHour(context);
-    }
     /**
      * For screensavers to set whether the digital or analog clock should be displayed.
      * Returns the view to be displayed.
@@ -241,10 +189,7 @@ public class Utils {
     }
 
     public static String getClockStyle(Context context) {
-        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
-        String defaultClockStyle = context.getResources().getString(R.string.default_clock_style);
-
-        return sharedPref.getString("screensaver_clock_style", defaultClockStyle);
+        return DisplayConfig.get(context).getClockStyle();
     }
 
     public static  void setAnalogOrDigitalView(Window window, String style, boolean mainClockFrameOnly) {
@@ -279,14 +224,17 @@ public class Utils {
     
     /**
      * For screensavers to dim the lights if necessary.
+     *
+     * @return the paint of the layer dimming the view
      */
-    public static void dimView(int dim, View view) {
+    public static Paint dimView(int dim, View view) {
         Paint paint = new Paint();
         paint.setColor(Color.WHITE);
         dim=dim<<24;
         dim|=0x00FFFFFF;
         paint.setColorFilter(new PorterDuffColorFilter(dim, PorterDuff.Mode.MULTIPLY));
         view.setLayerType(View.LAYER_TYPE_HARDWARE, paint);
+        return paint;
     }
 
     /** Clock views can call this to refresh their date. **/
@@ -306,25 +254,15 @@ public class Utils {
 
     public static void setBackground(Context context, ImageView backgroundView, String imagePath){
 
-        if(backgroundView != null && backgroundView.getDrawable() != null) {
-            BitmapDrawable bd = (BitmapDrawable) backgroundView.getDrawable();
-            bd.getBitmap().recycle();
-            backgroundView.setImageBitmap(null);
+        if (backgroundView == null) {
+            return;
         }
 
         if (!imagePath.isEmpty()){
-            try{
-                int brightness = PreferenceManager.getDefaultSharedPreferences(context).getInt(
-                        ScreensaverSettingsActivity.KEY_BACKGROUND_BRIGHTNESS,
-                        ScreensaverSettingsActivity.BACKGROUND_BRIGHTNESS_DEFAULT);
-
-                backgroundView.setAlpha((float)brightness/100);
-                // Todo: load image only once in memory instead of reloading it allways from imagePathUri
-                backgroundView.setImageURI(Uri.parse(new File(imagePath).toString()));
-            }catch (Exception e){
-                Log.e("Cannot set background image",e);
-            }
+            backgroundView.setAlpha(DisplayConfig.get(context).getBackgroundAlpha());
         }
+        // Decoded in the background only when the file changed, otherwise a no-op
+        sBackgroundLoader.load(backgroundView, imagePath);
     }
 
 
@@ -356,19 +294,27 @@ public class Utils {
     }
 
 
+    /**
+     * Shows the wake-up image, decoded once, and lets {@link WakeupFader} fade it in smoothly
+     * before the next alarm. Calling it again with the same image and alarm changes nothing.
+     */
     public static void setWakeupView(Context context, ImageView view, String imagePath){
-        float alpha = 0;
+        if (imagePath.isEmpty()){
+            sWakeupFader.stop();
+            sWakeupLoader.load(view, imagePath);
+            return;
+        }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            AlarmManager alarmManager =( AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
-            AlarmManager.AlarmClockInfo alarmClockInfo = alarmManager.getNextAlarmClock();
+        long alarmTime = 0;
+        int wakeupStartTime = 0, wakeupFullBrightnessTime = 0;
 
-            if(alarmClockInfo!=null){
-                SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(context);
-                int wakeupStartTime = pref.getInt(ScreensaverSettingsActivity.KEY_WAKEUP_START_TIME, 30) * 60;
-                int wakeupFullBrightnessTime = pref.getInt(ScreensaverSettingsActivity.KEY_WAKEUP_FULL_BRIGHTNESS_TIME, 5) * 60;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            alarmTime = NextAlarmProvider.getInstance(context).getTriggerTime();
 
-                alpha = getWakeupAlpha(alarmClockInfo.getTriggerTime(), wakeupStartTime, wakeupFullBrightnessTime);
+            if(alarmTime != 0){
+                DisplayConfig config = DisplayConfig.get(context);
+                wakeupStartTime = config.getWakeupStartSeconds();
+                wakeupFullBrightnessTime = config.getWakeupFullBrightnessSeconds();
             }
         }
         else{
@@ -376,59 +322,50 @@ public class Utils {
             Log.w("Wakup animation is supported from SDK version 21 aka Lollipop");
         }
 
-        if (!imagePath.isEmpty()){
-
-            try{
-                view.setAlpha(alpha);
-                view.setImageURI(android.net.Uri.parse(imagePath));
-            }catch (Exception e){
-                Log.e("Cannot set background image",e);
-            }
-        }
+        sWakeupFader.start(view, alarmTime, wakeupStartTime, wakeupFullBrightnessTime);
+        sWakeupLoader.load(view, imagePath);
     }
 
     public static float getWakeupAlpha( long alarmTimeWallTime, int startInSeconds, int fullAlphaInSeconds ){
+        return getWakeupAlpha(alarmTimeWallTime, System.currentTimeMillis(), startInSeconds, fullAlphaInSeconds);
+    }
+
+    /**
+     * @return 0 before the wake-up window, 1 from the full brightness time, linear in between
+     */
+    public static float getWakeupAlpha( long alarmTimeWallTime, long now, int startInSeconds, int fullAlphaInSeconds ){
         float alpha = 0;
-        Date currentTime = new Date();
-        long delta = alarmTimeWallTime - currentTime.getTime();
-        long deltaSeconds = delta/1000;
+        long delta = alarmTimeWallTime - now;
+        float deltaSeconds = delta/1000f;
 
         if(deltaSeconds < startInSeconds ){
             if(deltaSeconds < fullAlphaInSeconds){
                 alpha = 1;
             }
             else {
-                alpha = 1 - (float) (deltaSeconds - fullAlphaInSeconds) / (startInSeconds - fullAlphaInSeconds);
+                alpha = 1 - (deltaSeconds - fullAlphaInSeconds) / (startInSeconds - fullAlphaInSeconds);
             }
         }
 
         return alpha;
     }
 
+    /**
+     * Shows the alarm cached by {@link NextAlarmProvider}, if it is closer than the hide until
+     * setting.
+     */
     public static void setAlarmTextView(Context context, TextView alarm) {
-        String nextAlarm = Settings.System.getString(context.getContentResolver(), Settings.System.NEXT_ALARM_FORMATTED);
-        long nextAlarmTime = 0;
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            AlarmManager alarmManager =( AlarmManager)context.getSystemService(Context.ALARM_SERVICE);
-            AlarmManager.AlarmClockInfo alarmClockInfo = alarmManager.getNextAlarmClock();
-
-            if(alarmClockInfo!=null){
-                nextAlarmTime = alarmClockInfo.getTriggerTime();
-            }
-        }
-
-        long currentTime = new Date().getTime();
-        long timeUntilShowUp = PreferenceManager.getDefaultSharedPreferences(context).getInt(ScreensaverSettingsActivity.KEY_ALARM_HIDE_UNTIL_HOURS, 14) * 60 * 60;
-        long delta = (nextAlarmTime - currentTime )/1000;
+        NextAlarmProvider provider = NextAlarmProvider.getInstance(context);
+        DisplayConfig config = DisplayConfig.get(context);
 
-        if(nextAlarm == null || nextAlarm.isEmpty() || delta > timeUntilShowUp && timeUntilShowUp != 0){
+        if(!provider.isAlarmShown(config)){
             alarm.setVisibility(View.GONE);
         } else {
+            String nextAlarm = provider.getFormatted();
             alarm.setVisibility(View.VISIBLE);
             alarm.setText(nextAlarm);
 
-            int color = getColorFromPreference(context, ScreensaverSettingsActivity.KEY_ALARM_COLOR, R.string.default_alarm_color);
+            int color = config.getAlarmColor();
             alarm.setTextColor(color);
 
 
@@ -442,49 +379,35 @@ public class Utils {
         }
     }
 
+    /**
+     * Shows today's date, formatted once a day by {@link DateFormatCache}.
+     */
     public static void setDateTextView(Context context, TextView dateView,
                                        String dateFormat, String dateFormatForAccessibility) {
-        Date date = new Date();
-
-        dateView.setText(new SimpleDateFormat(dateFormat).format(date));
-        dateView.setContentDescription(new SimpleDateFormat(dateFormatForAccessibility).format(date));
+        String text = DateFormatCache.format(dateFormat);
+        if (!TextUtils.equals(text, dateView.getText())) {
+            dateView.setText(text);
+        }
+        dateView.setContentDescription(DateFormatCache.format(dateFormatForAccessibility));
 
-        int color = getColorFromPreference(context, ScreensaverSettingsActivity.KEY_DATE_COLOR, R.string.default_date_color);
+        int color = DisplayConfig.get(context).getDateColor();
         dateView.setTextColor(color);
     }
 
+    /**
+     * Shows the state kept by {@link BatteryMonitor}, which must have a subscriber.
+     */
     public static void setBatteryStatus(Context context, TextView batteryView) {
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = context.registerReceiver(null, ifilter);
-
-        if (batteryStatus == null) {
+        BatteryMonitor battery = BatteryMonitor.getInstance(context);
+        if (battery.getPercent() < 0 || battery.isFull()) {
+            batteryView.setVisibility(View.GONE);
             return;
         }
-
-        // Are we charging / charged?
-        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
-        boolean isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
-
-        // How are we charging?
-        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-
-        float batteryPct = level / (float) scale*100;
-
-        String text = "";
-        if (status == BatteryManager.BATTERY_STATUS_FULL) {
-            batteryView.setVisibility(View.GONE);
-        } else {
-            if (isCharging) {
-                text += context.getString(R.string.battery_charging);
-                text += ", ";
-            }
-            text += (int)batteryPct + "%";
+        String text = battery.getStatusText(context);
+        if (!TextUtils.equals(text, batteryView.getText())) {
             batteryView.setText(text);
-            batteryView.setVisibility(View.VISIBLE);
         }
-
-
+        batteryView.setVisibility(View.VISIBLE);
     }
 
     public static Intent getAlarmPackage(Context context) {
@@ -558,9 +481,11 @@ public class Utils {
 
 
     public static float getSizeRatio(Context context, String key, String def_value) {
-        float resizeRatio;
+        return getSizeRatio(PreferenceManager.getDefaultSharedPreferences(context).getString(key, def_value));
+    }
 
-        String size = PreferenceManager.getDefaultSharedPreferences(context).getString(key, def_value);
+    public static float getSizeRatio(String size) {
+        float resizeRatio;
 
         switch (size) {
             case CLOCK_SIZE_TINY:
@@ -600,11 +525,10 @@ public class Utils {
         float resizeRatio;
         int orientation = parent.getResources().getConfiguration().orientation;
 
-        boolean landscapeBigger = PreferenceManager.getDefaultSharedPreferences(parent.getContext()).getBoolean(
-                ScreensaverSettingsActivity.KEY_LANDSCAPE_BIGGER,
-                ScreensaverSettingsActivity.KEY_LANDSCAPE_BIGGER_DEFAULT);
+        DisplayConfig config = DisplayConfig.get(parent.getContext());
+        boolean landscapeBigger = config.isLandscapeBigger();
 
-        resizeRatio = getSizeRatio(parent.getContext(), ScreensaverSettingsActivity.KEY_CLOCK_SIZE, ScreensaverSettingsActivity.SIZE_DEFAULT);
+        resizeRatio = getSizeRatio(config.getClockSize());
 
         if (orientation == Configuration.ORIENTATION_LANDSCAPE && landscapeBigger)
             resizeRatio *= 1.5;
@@ -693,40 +617,25 @@ public class Utils {
         Context context = timeDisplayHours.getContext();
 
         if (style.equals(Utils.CLOCK_TYPE_DIGITAL))
-            timeDisplayHours.setTypeface(getTypeface(context, "fonts/Roboto-Bold.ttf") );
+            timeDisplayHours.setTypeface(getTypeface(context, TypefaceRegistry.BOLD_FONT));
         else
-            timeDisplayHours.setTypeface(getTypeface(context, "fonts/Roboto-Thin.ttf") );
+            timeDisplayHours.setTypeface(getTypeface(context, TypefaceRegistry.THIN_FONT));
 
-        timeDisplayMinutes.setTypeface(getTypeface(context, "fonts/Roboto-Thin.ttf"));
-        timeDisplayAmPm.setTypeface(getTypeface(context, "fonts/Roboto-Regular.ttf"));
+        timeDisplayMinutes.setTypeface(getTypeface(context, TypefaceRegistry.THIN_FONT));
+        timeDisplayAmPm.setTypeface(getTypeface(context, TypefaceRegistry.DEFAULT_FONT));
 
-        int color = getColorFromPreference(context, ScreensaverSettingsActivity.KEY_CLOCK_COLOR, R.string.default_clock_color );
+        int color = DisplayConfig.get(context).getClockColor();
 
         timeDisplayHours.setTextColor(color);
         timeDisplayMinutes.setTextColor(color);
         timeDisplayAmPm.setTextColor(color);
     }
 
+    /**
+     * @return the shared instance of the font asset, see {@link TypefaceRegistry}
+     */
     public static Typeface getTypeface(Context context, String key) {
-        Typeface font;
-
-        try {
-            font = Typeface.createFromAsset(context.getAssets(), key);
-        }catch(RuntimeException e){
-            font = Typeface.createFromAsset(context.getAssets(), "fonts/Roboto-Regular.ttf");
-
-            android.util.Log.w(TAG, "getTypeface: asset " + key + " not found, default: \"fonts/Roboto-Regular.ttf\" used");
-        }
-
-        return font;
-    }
-
-    private static int getColorFromPreference(Context context, String key, int defaultValue) {
-        SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(context);
-        String value = pref.getString(key, context.getResources().getString(defaultValue) );
-
-        int colorId = context.getResources().getIdentifier(value, "color", context.getPackageName());
-        return context.getResources().getColor(colorId);
+        return TypefaceRegistry.get(context, key);
     }
 
     public static void setBrightness(Window window, View saverView,
@@ -746,18 +655,11 @@ public class Utils {
                                      ScreensaverMoveSaverRunnable moveSaverRunnable,
                                      DreamService dream) {
 
-        int brightness = PreferenceManager.getDefaultSharedPreferences(saverView.getContext()).getInt(
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS,
-                ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT);
-        int auto_brightness_adj = PreferenceManager.getDefaultSharedPreferences(saverView.getContext()).getInt(
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO_ADJ,
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO_ADJ_DEFAULT);
-        int min_brightness_adj = PreferenceManager.getDefaultSharedPreferences(saverView.getContext()).getInt(
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS_MIN_ADJ,
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS_MIN_ADJ_DEFAULT);
-        boolean useAutoBrightness = PreferenceManager.getDefaultSharedPreferences(saverView.getContext()).getBoolean(
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO,
-                ScreensaverSettingsActivity.KEY_BRIGHTNESS_AUTO_DEFAULT);
+        DisplayConfig config = DisplayConfig.get(saverView.getContext());
+        int brightness = config.getBrightness();
+        int auto_brightness_adj = config.getAutoBrightnessAdj();
+        int min_brightness_adj = config.getMinBrightnessAdj();
+        boolean useAutoBrightness = config.isAutoBrightness();
 
 
         boolean dim = brightness < SeekBarPreference.BRIGHTNESS_NIGHT;
@@ -778,7 +680,7 @@ public class Utils {
                 brightness = ScreensaverSettingsActivity.BRIGHTNESS_MAX;
 
             //TODO: with auto brightness, it should be dynamic!
-            Utils.dimView(brightness, saverView);
+            moveSaverRunnable.setLayerPaint(Utils.dimView(brightness, saverView));
 
             if (useAutoBrightness)
 //                moveSaverRunnable.setAutoBrightness(true, (float)auto_brightness_adj / 100, (float)min_brightness_adj / 100);
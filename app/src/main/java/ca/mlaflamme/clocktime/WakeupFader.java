@@ -0,0 +1,94 @@
+package ca.mlaflamme.clocktime;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Fades the wake-up image in before the next alarm, following {@link Utils#getWakeupAlpha}.
+ * <p>
+ * The alpha is stepped at a low frame rate, just often enough for each step to be one of the 256
+ * levels the display can show, and only inside the wake-up window. Before the window a single
+ * callback is scheduled at its start, after it the view stays opaque and nothing runs.
+ */
+public class WakeupFader {
+    private final static String TAG = Utils.class.getName();
+    private static final long MIN_FRAME_INTERVAL = 1000;
+    private static final int ALPHA_LEVELS = 255;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private WeakReference<View> mView;
+    private long mAlarmTime;
+    private int mStartInSeconds, mFullAlphaInSeconds;
+
+    private final Runnable mFrame = new Runnable() {
+        @Override
+        public void run() {
+            step();
+        }
+    };
+
+    /**
+     * Follows a new alarm, or the same one with new settings. Cheap to call again with the same
+     * values, the running fade goes on.
+     *
+     * @param alarmTime wall time of the next alarm, 0 when there is none
+     */
+    public void start(View view, long alarmTime, int startInSeconds, int fullAlphaInSeconds) {
+        View current = mView != null ? mView.get() : null;
+        if (current == view && alarmTime == mAlarmTime && startInSeconds == mStartInSeconds
+                && fullAlphaInSeconds == mFullAlphaInSeconds) {
+            return;
+        }
+        mView = new WeakReference<>(view);
+        mAlarmTime = alarmTime;
+        mStartInSeconds = startInSeconds;
+        mFullAlphaInSeconds = fullAlphaInSeconds;
+        step();
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(mFrame);
+        mView = null;
+        mAlarmTime = 0;
+    }
+
+    private void step() {
+        mHandler.removeCallbacks(mFrame);
+        View view = mView != null ? mView.get() : null;
+        if (view == null) {
+            return;
+        }
+        if (mAlarmTime == 0) {
+            view.setAlpha(0);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        view.setAlpha(Utils.getWakeupAlpha(mAlarmTime, now, mStartInSeconds, mFullAlphaInSeconds));
+
+        long windowStart = mAlarmTime - mStartInSeconds * 1000L;
+        long windowEnd = mAlarmTime - mFullAlphaInSeconds * 1000L;
+        if (now >= windowEnd || windowEnd <= windowStart) {
+            // Fully faded in, or the alarm passed: nothing left to animate
+            return;
+        }
+        if (view.getWindowToken() == null && now >= windowStart) {
+            // Detached, the next start() resumes the fade
+            mView = null;
+            return;
+        }
+
+        long delay;
+        if (now < windowStart) {
+            delay = windowStart - now;
+        } else {
+            delay = Math.max(MIN_FRAME_INTERVAL, (windowEnd - windowStart) / ALPHA_LEVELS);
+            delay = Math.min(delay, windowEnd - now);
+        }
+        mHandler.postAtTime(mFrame, SystemClock.uptimeMillis() + delay);
+    }
+}
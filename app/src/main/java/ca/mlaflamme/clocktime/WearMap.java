@@ -0,0 +1,225 @@
+package ca.mlaflamme.clocktime;
+
+import android.content.Context;
+import android.graphics.Point;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Coarse map of how long each part of the screen showed the clock, and how bright, to place the
+ * clock where the screen is the least worn.
+ * <p>
+ * The screen is split in a grid of cells holding their cumulative luminance-time, one grid per
+ * orientation. The next position is the least worn of a few candidates taken from a Halton
+ * sequence, which covers the screen evenly instead of clustering like random positions. The map
+ * outlives the dream sessions in a small binary file. The grid is not synchronized, {@link #save}
+ * included: moving the write to another thread needs a copy of the grid.
+ */
+public class WearMap {
+    private final static String TAG = Utils.class.getName();
+
+    private static final String FILE_NAME = "wear.bin";
+    private static final int MAGIC = 0x57454152; // "WEAR"
+    private static final int VERSION = 1;
+    private static final int COLUMNS = 16;
+    private static final int ROWS = 16;
+    private static final int CANDIDATES = 8;
+
+    private static WearMap sInstance;
+
+    private final File mFile;
+    // Landscape grid, then portrait grid, row by row
+    private final float[] mWear = new float[2 * COLUMNS * ROWS];
+    private int mSequenceIndex = 1;
+    private boolean mDirty;
+
+    private WearMap(Context context) {
+        mFile = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    public static WearMap getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearMap(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds the wear of the clock shown at a position.
+     *
+     * @param contentWidth width of the screen area the clock moves in
+     * @param contentHeight height of the screen area the clock moves in
+     * @param x left of the clock in the screen area
+     * @param y top of the clock in the screen area
+     * @param amount brightness of the clock, from 0 to 1, times the seconds it was shown
+     */
+    public void addWear(int contentWidth, int contentHeight, float x, float y,
+                        int width, int height, float amount) {
+        if (contentWidth <= 0 || contentHeight <= 0 || amount <= 0) {
+            return;
+        }
+        int offset = getGridOffset(contentWidth, contentHeight);
+        float cellWidth = (float) contentWidth / COLUMNS;
+        float cellHeight = (float) contentHeight / ROWS;
+        int firstColumn = clamp((int) (x / cellWidth), COLUMNS);
+        int lastColumn = clamp((int) ((x + width) / cellWidth), COLUMNS);
+        int firstRow = clamp((int) (y / cellHeight), ROWS);
+        int lastRow = clamp((int) ((y + height) / cellHeight), ROWS);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                mWear[offset + row * COLUMNS + column] += amount;
+            }
+        }
+        mDirty = true;
+    }
+
+    /**
+     * Picks the next position of the clock.
+     *
+     * @param xrange room left for the clock horizontally, from 0
+     * @param yrange room left for the clock vertically, from 0
+     * @param out the chosen left and top of the clock
+     */
+    public void nextPosition(int contentWidth, int contentHeight, int width, int height,
+                             float xrange, float yrange, Point out) {
+        int offset = getGridOffset(contentWidth, contentHeight);
+        float cellWidth = (float) contentWidth / COLUMNS;
+        float cellHeight = (float) contentHeight / ROWS;
+
+        float bestScore = Float.MAX_VALUE;
+        for (int i = 0; i < CANDIDATES; i++) {
+            int index = mSequenceIndex++;
+            int x = (int) (radicalInverse(index, 2) * xrange);
+            int y = (int) (radicalInverse(index, 3) * yrange);
+
+            // Mean wear under the clock at the candidate
+            int firstColumn = clamp((int) (x / cellWidth), COLUMNS);
+            int lastColumn = clamp((int) ((x + width) / cellWidth), COLUMNS);
+            int firstRow = clamp((int) (y / cellHeight), ROWS);
+            int lastRow = clamp((int) ((y + height) / cellHeight), ROWS);
+            float score = 0;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    score += mWear[offset + row * COLUMNS + column];
+                }
+            }
+            score /= (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1);
+
+            if (score < bestScore) {
+                bestScore = score;
+                out.set(x, y);
+            }
+        }
+        if (mSequenceIndex < 0) {
+            mSequenceIndex = 1;
+        }
+        mDirty = true;
+    }
+
+    private static int getGridOffset(int contentWidth, int contentHeight) {
+        return contentWidth >= contentHeight ? 0 : COLUMNS * ROWS;
+    }
+
+    private static int clamp(int cell, int count) {
+        return cell < 0 ? 0 : cell >= count ? count - 1 : cell;
+    }
+
+    /**
+     * @return the index mirrored around the radix point in the base, the Halton sequence
+     */
+    private static float radicalInverse(int index, int base) {
+        float result = 0;
+        float fraction = 1f / base;
+        while (index > 0) {
+            result += (index % base) * fraction;
+            index /= base;
+            fraction /= base;
+        }
+        return result;
+    }
+
+    private void load() {
+        if (!mFile.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != COLUMNS || in.readInt() != ROWS) {
+                Log.w("Ignoring wear map of another format");
+                return;
+            }
+            mSequenceIndex = in.readInt();
+            for (int i = 0; i < mWear.length; i++) {
+                mWear[i] = in.readFloat();
+            }
+        } catch (IOException e) {
+            Log.e("Cannot read wear map", e);
+            Arrays.fill(mWear, 0);
+            mSequenceIndex = 1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the map if it changed, when a dream session ends.
+     */
+    public void save() {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+
+        // Only the differences between the cells matter, keeps the values small
+        for (int offset = 0; offset < mWear.length; offset += COLUMNS * ROWS) {
+            float min = Float.MAX_VALUE;
+            for (int i = offset; i < offset + COLUMNS * ROWS; i++) {
+                min = Math.min(min, mWear[i]);
+            }
+            for (int i = offset; i < offset + COLUMNS * ROWS; i++) {
+                mWear[i] -= min;
+            }
+        }
+
+        File temp = new File(mFile.getParentFile(), FILE_NAME + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(COLUMNS);
+                out.writeInt(ROWS);
+                out.writeInt(mSequenceIndex);
+                for (float wear : mWear) {
+                    out.writeFloat(wear);
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Cannot write " + mFile);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            Log.e("Cannot write wear map", e);
+        }
+    }
+}